@@ -0,0 +1,199 @@
+package benchmark;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import service.JGitService;
+import service.impl.BlobCache;
+import service.impl.JGitServiceImpl;
+import utils.PropertiesUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName JGitServiceBenchmark
+ * @Description JGitService各操作的基准测试，每个测试方法使用新生成的SyntheticRepository；
+ *              同时统计吞吐量和延迟分布，运行时加-prof gc输出内存分配速率
+ * @Author jinym
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JGitServiceBenchmark {
+
+    // 每次读取的历史版本文件数
+    private static final int HIS_FILE_COUNT = 20;
+
+    @Param({"1000"})
+    public int fileCount;
+
+    @Param({"3"})
+    public int depth;
+
+    @Param({"100"})
+    public int commitCount;
+
+    @Param({"4096"})
+    public int fileSize;
+
+    @Param({"0.1"})
+    public double binaryRatio;
+
+    private SyntheticRepository repository;
+
+    private JGitService service;
+
+    private Collection<String> statusPaths;
+
+    private String hotFile;
+
+    private List<String> files;
+
+    private List<String> commitIds;
+
+    private Map<String, byte[]> zipData;
+
+    private String commitFile;
+
+    private int commitCounter = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        // 只测操作本身，不在后台同步，也不输出每个文件的日志
+        PropertiesUtils.properties.setProperty("gitlab.syncIntervalMillis", "0");
+        // 版本对比测的是未缓存的对比，同一对版本的结果缓存后只是一次查表
+        PropertiesUtils.properties.setProperty("gitlab.diffCacheBytes", "0");
+        PropertiesUtils.properties.setProperty("gitlab.diffFileCacheBytes", "0");
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(ch.qos.logback.classic.Level.WARN);
+
+        repository = new SyntheticRepository(fileCount, depth, commitCount, fileSize, binaryRatio);
+        service = new JGitServiceImpl(repository.config());
+        files = repository.getFiles();
+        commitIds = repository.getCommitIds();
+
+        // 工作区中有少量未提交的修改
+        statusPaths = new ArrayList<>();
+        for (int i = 0; i < files.size(); i += Math.max(1, files.size() / 50)) {
+            statusPaths.add(files.get(i));
+        }
+        for (int i = 0; i < 5 && i < files.size(); i++) {
+            repository.write(files.get(i * 7 % files.size()), fileSize);
+        }
+
+        hotFile = files.get(files.size() / 2);
+        Inputs inputs = new Inputs();
+        inputs.next(this);
+        zipData = service.readHisFile(inputs.hisCommitIds, inputs.hisPaths);
+        commitFile = files.get(files.size() - 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        service.close();
+        repository.close();
+    }
+
+    @Benchmark
+    public Map<String, String> status() {
+        return service.status(statusPaths);
+    }
+
+    /**
+     * 目录树首次建立后由缓存增量维护，测的是稳定状态下的读取
+     */
+    @Benchmark
+    public Object initDirTreeStatus() {
+        return service.initDirTreeStatus();
+    }
+
+    @Benchmark
+    public Object getFileVersion() {
+        return service.getFileVersion(hotFile, 20);
+    }
+
+    @Benchmark
+    public Object getAllVersion() {
+        return service.getAllVersion(20);
+    }
+
+    @Benchmark
+    public Map<String, byte[]> readHisFile(Inputs inputs) {
+        return service.readHisFile(inputs.hisCommitIds, inputs.hisPaths);
+    }
+
+    @Benchmark
+    public boolean compressZipFile() {
+        return service.compressZipFile(zipData, "bench.zip");
+    }
+
+    /**
+     * 每次对比不同的两个版本，相隔约一半的提交
+     */
+    @Benchmark
+    public void difVersionInfo(Inputs inputs) {
+        service.difVersionInfo(inputs.newVersion, inputs.oldVersion);
+    }
+
+    /**
+     * 每次修改同一个文件后提交，推送到本地bare仓库在后台进行
+     */
+    @Benchmark
+    public String commitToGitRepository() throws Exception {
+        repository.write(commitFile, fileSize);
+        return service.commitToGitRepository(commitFile, "bench" + commitCounter++);
+    }
+
+    /**
+     * 每次调用前换一组输入，读取历史版本和版本对比不会只命中缓存
+     */
+    @State(Scope.Thread)
+    public static class Inputs {
+        private int round = 0;
+
+        String[] hisCommitIds = new String[HIS_FILE_COUNT];
+
+        String[] hisPaths = new String[HIS_FILE_COUNT];
+
+        ObjectId newVersion;
+
+        ObjectId oldVersion;
+
+        @Setup(Level.Invocation)
+        public void next(JGitServiceBenchmark benchmark) {
+            List<String> commitIds = benchmark.commitIds;
+            List<String> files = benchmark.files;
+            int offset = round++;
+            // 历史版本文件：每轮提交和路径各错开一位，同一组合在提交数×文件数轮之后才重复
+            for (int i = 0; i < HIS_FILE_COUNT; i++) {
+                hisCommitIds[i] = commitIds.get((i * commitIds.size() / HIS_FILE_COUNT + offset) % commitIds.size());
+                hisPaths[i] = files.get((i * files.size() / HIS_FILE_COUNT + offset * 7) % files.size());
+            }
+            // 小文件在第一次读取后进入BlobCache，每次调用前清空，测的是从对象库读取
+            BlobCache.getInstance().clear();
+            int span = commitIds.size() / 2;
+            int old = offset % (commitIds.size() - span);
+            oldVersion = ObjectId.fromString(commitIds.get(old));
+            newVersion = ObjectId.fromString(commitIds.get(old + span));
+        }
+    }
+}
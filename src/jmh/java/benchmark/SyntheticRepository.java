@@ -0,0 +1,183 @@
+package benchmark;
+
+import entity.RepositoryConfig;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.URIish;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @ClassName SyntheticRepository
+ * @Description 基准测试用的本地仓库：按文件数、目录深度、提交数、文件大小、二进制文件比例生成历史，
+ *              本地bare仓库代替远程服务器，工作区为其clone，内容由固定随机种子生成，每次结果一致
+ * @Author jinym
+ **/
+public class SyntheticRepository implements AutoCloseable {
+
+    public static final String BRANCH = "master";
+
+    // 每个目录下的子目录数
+    private static final int FAN_OUT = 4;
+
+    private static final String TEXT_LINE = "合同条款 contract clause lorem ipsum dolor sit amet ";
+
+    private final File root;
+
+    private final File remote;
+
+    private final File work;
+
+    private final List<String> files = new ArrayList<>();
+
+    private final List<String> commitIds = new ArrayList<>();
+
+    private final Random random = new Random(20200601L);
+
+    /**
+     * @param fileCount   文件数
+     * @param depth       目录深度，0为全部放在根目录
+     * @param commitCount 提交数，第一次提交包含全部文件，之后每次修改约5%的文件
+     * @param fileSize    单个文件的字节数
+     * @param binaryRatio 二进制文件的比例(0~1)
+     */
+    public SyntheticRepository(int fileCount, int depth, int commitCount, int fileSize, double binaryRatio)
+            throws Exception {
+        root = Files.createTempDirectory("jgit-bench").toFile();
+        remote = new File(root, "remote.git");
+        work = new File(root, "work");
+        for (int i = 0; i < fileCount; i++) {
+            boolean binary = random.nextDouble() < binaryRatio;
+            files.add(directory(i, depth) + "file" + i + (binary ? ".bin" : ".txt"));
+        }
+        generate(commitCount, fileSize);
+    }
+
+    private void generate(int commitCount, int fileSize) throws Exception {
+        Git.init().setBare(true).setDirectory(remote).call().close();
+        try (Git git = Git.init().setDirectory(work).call()) {
+            for (String file : files) {
+                write(file, fileSize);
+            }
+            git.add().addFilepattern(".").call();
+            commitIds.add(commit(git, "初始化").name());
+            int changesPerCommit = Math.max(1, files.size() / 20);
+            for (int i = 1; i < commitCount; i++) {
+                for (int j = 0; j < changesPerCommit; j++) {
+                    String file = files.get(random.nextInt(files.size()));
+                    write(file, fileSize);
+                    git.add().addFilepattern(file).call();
+                }
+                commitIds.add(commit(git, "修改" + i).name());
+            }
+
+            StoredConfig config = git.getRepository().getConfig();
+            config.setString("branch", BRANCH, "remote", Constants.DEFAULT_REMOTE_NAME);
+            config.setString("branch", BRANCH, "merge", Constants.R_HEADS + BRANCH);
+            config.save();
+            git.remoteAdd().setName(Constants.DEFAULT_REMOTE_NAME).setUri(new URIish(remote.toURI().toURL())).call();
+            git.push().setRemote(Constants.DEFAULT_REMOTE_NAME)
+                    .setRefSpecs(new RefSpec(Constants.R_HEADS + BRANCH + ":" + Constants.R_HEADS + BRANCH)).call();
+            git.fetch().setRemote(Constants.DEFAULT_REMOTE_NAME).call();
+        }
+    }
+
+    private static RevCommit commit(Git git, String msg) throws Exception {
+        return git.commit().setMessage(msg).setAuthor("bench", "bench@example.com")
+                .setCommitter("bench", "bench@example.com").call();
+    }
+
+    /**
+     * 第i个文件所在目录，按FAN_OUT分层
+     */
+    private static String directory(int i, int depth) {
+        StringBuilder path = new StringBuilder();
+        int n = i;
+        for (int level = 0; level < depth; level++) {
+            path.append("d").append(level).append('_').append(n % FAN_OUT).append('/');
+            n /= FAN_OUT;
+        }
+        return path.toString();
+    }
+
+    /**
+     * 写入随机内容：文本文件为带随机数的行，二进制文件为随机字节
+     */
+    public void write(String file, int size) throws IOException {
+        File target = new File(work, file);
+        target.getParentFile().mkdirs();
+        byte[] data = new byte[size];
+        if (file.endsWith(".bin")) {
+            random.nextBytes(data);
+        } else {
+            StringBuilder text = new StringBuilder(size + 64);
+            while (text.length() < size) {
+                text.append(TEXT_LINE).append(random.nextInt()).append('\n');
+            }
+            byte[] bytes = text.toString().getBytes("UTF-8");
+            System.arraycopy(bytes, 0, data, 0, size);
+        }
+        Files.write(target.toPath(), data);
+    }
+
+    /**
+     * 指向本仓库的服务配置
+     */
+    public RepositoryConfig config() {
+        RepositoryConfig config = new RepositoryConfig();
+        config.setName("bench");
+        config.setUrl(remote.toURI().toString());
+        config.setLocalPath(work.getPath());
+        config.setBranch(BRANCH);
+        config.setUserName("bench");
+        config.setPassword("");
+        return config;
+    }
+
+    public File getWork() {
+        return work;
+    }
+
+    /**
+     * 相对工作区的文件路径，按生成顺序
+     */
+    public List<String> getFiles() {
+        return files;
+    }
+
+    /**
+     * 版本号，从最早到最新
+     */
+    public List<String> getCommitIds() {
+        return commitIds;
+    }
+
+    @Override
+    public void close() throws IOException {
+        Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,13 @@
+package entity;
+
+/**
+ * 快照打包格式
+ */
+public enum ArchiveFormat {
+    // 各文件并行压缩，已压缩的格式直接存储
+    ZIP,
+    // 不压缩的tar
+    TAR,
+    // gzip压缩的tar
+    TGZ
+}
@@ -0,0 +1,34 @@
+package entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 缓存命中统计
+ */
+@Getter
+@AllArgsConstructor
+public class CacheStats {
+    // 命中次数
+    private final long hits;
+
+    // 未命中次数
+    private final long misses;
+
+    // 淘汰次数
+    private final long evictions;
+
+    // 条目数
+    private final long size;
+
+    // 估算占用字节数
+    private final long bytes;
+
+    // 字节上限
+    private final long maxBytes;
+
+    public double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,23 @@
+package entity;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * clone选项
+ */
+@Getter
+@Setter
+public class CloneOptions {
+    // 只拉取配置的分支
+    private boolean singleBranch = true;
+
+    // 不检出工作区，文件在首次访问时再写出
+    private boolean noCheckout = false;
+
+    // noCheckout时clone后立即检出的路径(文件或目录)
+    private List<String> paths = new ArrayList<>();
+}
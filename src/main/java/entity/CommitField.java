@@ -0,0 +1,21 @@
+package entity;
+
+/**
+ * 提交记录中可选读取的字段，AUTHOR、COMMITTER、MESSAGE需要解析提交正文
+ */
+public enum CommitField {
+    // 树ID(对比差异所用)
+    TREE,
+    // 提交时间
+    TIME,
+    // 作者
+    AUTHOR,
+    // 提交人
+    COMMITTER,
+    // 提交备注
+    MESSAGE;
+
+    public boolean needsBody() {
+        return this == AUTHOR || this == COMMITTER || this == MESSAGE;
+    }
+}
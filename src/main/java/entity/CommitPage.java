@@ -0,0 +1,19 @@
+package entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 一页提交记录
+ */
+@Getter
+@AllArgsConstructor
+public class CommitPage {
+    // 从新到旧的提交记录
+    private final List<CommitRecord> records;
+
+    // 下一页的游标(本页最后一个版本号，及继续遍历的起点)，没有更多记录时为null
+    private final String nextCursor;
+}
@@ -0,0 +1,39 @@
+package entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.util.Date;
+
+/**
+ * 不可变的提交记录，未请求的字段为null
+ */
+@Getter
+@AllArgsConstructor
+public class CommitRecord {
+    // 版本号
+    private final String commitId;
+
+    // 用于对比的ID
+    private final ObjectId treeId;
+
+    // 作者
+    private final String authorName;
+
+    private final String authorEmail;
+
+    // 作者提交日期
+    private final Date authorDate;
+
+    // 提交人
+    private final String committerName;
+
+    private final String committerEmail;
+
+    // 提交日期
+    private final Date commitDate;
+
+    // 提交备注
+    private final String commitMsg;
+}
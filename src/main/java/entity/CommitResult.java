@@ -0,0 +1,23 @@
+package entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 一次提交请求的结果
+ */
+@Getter
+@AllArgsConstructor
+public class CommitResult {
+    // 包含本次修改的提交版本号，没有需要提交的修改时为null
+    private final String commitId;
+
+    // 本次提交的文件
+    private final List<String> files;
+
+    // 推送结果，推送成功(或远程已是最新)时为true；没有提交时立即完成为false
+    private final CompletableFuture<Boolean> pushed;
+}
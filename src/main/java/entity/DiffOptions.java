@@ -0,0 +1,28 @@
+package entity;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.RawTextComparator;
+
+/**
+ * 版本对比选项
+ */
+@Getter
+@Setter
+public class DiffOptions {
+    // 只列出变化的文件，不对比内容
+    private boolean nameOnly = false;
+
+    // 行比较器，默认忽略全部空白字符；DEFAULT为不忽略，WS_IGNORE_CHANGE/LEADING/TRAILING只忽略部分空白
+    private RawTextComparator comparator = RawTextComparator.WS_IGNORE_ALL;
+
+    // 对比算法：MYERS，或对大量重复行(如xml)效果更好的HISTOGRAM
+    private DiffAlgorithm.SupportedAlgorithm algorithm = DiffAlgorithm.SupportedAlgorithm.MYERS;
+
+    // 超过该字节数的文件不对比内容，只返回大小和blob id；小于等于0时使用gitlab.diffBigFileThreshold
+    private long bigFileThreshold = 0;
+
+    // 差异块的上下文行数
+    private int contextLines = 3;
+}
@@ -0,0 +1,27 @@
+package entity;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+public class DiffSummary {
+    // 老版本
+    private ObjectId oldTreeId;
+
+    // 新版本
+    private ObjectId newTreeId;
+
+    // 每个文件的差异
+    private List<FileDiff> files = new ArrayList<>();
+
+    // 全部文件增加行数
+    private int linesAdded;
+
+    // 全部文件减少行数
+    private int linesRemoved;
+}
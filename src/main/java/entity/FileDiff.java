@@ -0,0 +1,51 @@
+package entity;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+public class FileDiff {
+    // 操作：ADD / DELETE / MODIFY ...
+    private DiffEntry.ChangeType changeType;
+
+    // 老版本路径，新增文件为/dev/null
+    private String oldPath;
+
+    // 新版本路径，删除文件为/dev/null
+    private String newPath;
+
+    private ObjectId oldId;
+
+    private ObjectId newId;
+
+    // 增加行数
+    private int linesAdded;
+
+    // 减少行数
+    private int linesRemoved;
+
+    // 老版本文件字节数，不存在时为0
+    private long oldSize;
+
+    // 新版本文件字节数，不存在时为0
+    private long newSize;
+
+    // 二进制文件不统计行数
+    private boolean binary;
+
+    // 超过大文件阈值，未对比内容(同时按二进制处理)
+    private boolean oversized;
+
+    // 差异块
+    private List<HunkRange> hunks = new ArrayList<>();
+
+    public long getSizeDelta() {
+        return newSize - oldSize;
+    }
+}
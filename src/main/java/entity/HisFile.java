@@ -0,0 +1,57 @@
+package entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.nio.ByteBuffer;
+
+@Getter
+@Setter
+public class HisFile {
+    // 版本号
+    private String commitId;
+
+    // 相对git库的文件路径
+    private String relativePath;
+
+    // 文件在该版本中的blob
+    private ObjectId blobId;
+
+    // 文件大小
+    private long size;
+
+    // 文件字节数据，只定位不读取时为null
+    private byte[] data;
+
+    // 来自BlobCache的只读内容，第一次getData()时才复制为data
+    @Getter(AccessLevel.NONE)
+    private ByteBuffer buffer;
+
+    // 读取失败的原因，成功时为null
+    private String error;
+
+    /**
+     * 文件字节数据，内容来自BlobCache时复制一次
+     */
+    public byte[] getData() {
+        if (data == null && buffer != null) {
+            ByteBuffer source = buffer.duplicate();
+            byte[] copy = new byte[source.remaining()];
+            source.get(copy);
+            data = copy;
+        }
+        return data;
+    }
+
+    /**
+     * 只读内容，不复制；只定位不读取时为null
+     */
+    public ByteBuffer getBuffer() {
+        if (buffer != null) {
+            return buffer.duplicate();
+        }
+        return data == null ? null : ByteBuffer.wrap(data).asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,19 @@
+package entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 一个差异块的行范围，与unified diff的"@@ -oldStart,oldLines +newStart,newLines @@"一致(行号从1开始)
+ */
+@Getter
+@AllArgsConstructor
+public class HunkRange {
+    private final int oldStart;
+
+    private final int oldLines;
+
+    private final int newStart;
+
+    private final int newLines;
+}
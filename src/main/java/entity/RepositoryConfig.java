@@ -0,0 +1,32 @@
+package entity;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 单个git仓库的配置
+ */
+@Getter
+@Setter
+public class RepositoryConfig {
+    // 仓库名，注册表中的唯一标识
+    private String name;
+
+    // git url
+    private String url;
+
+    // 本地git路径
+    private String localPath;
+
+    // 代码分支
+    private String branch;
+
+    // 账户名
+    private String userName;
+
+    // 账户密码
+    private String password;
+
+    // 后台同步间隔(毫秒)，小于等于0时不在后台同步
+    private long syncIntervalMillis;
+}
@@ -0,0 +1,28 @@
+package entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 恢复历史版本的结果
+ */
+@Getter
+@AllArgsConstructor
+public class RestoreResult {
+    // 恢复到的版本号
+    private final String version;
+
+    // 重新写出的文件
+    private final List<String> files;
+
+    // 目标版本中不存在而删除的文件
+    private final List<String> deleted;
+
+    // 与目标版本一致而跳过的文件数
+    private final int unchanged;
+
+    // 提交结果，未要求提交时为null
+    private final CommitResult commit;
+}
@@ -0,0 +1,57 @@
+package entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Date;
+
+/**
+ * 后台同步状态
+ */
+@Getter
+@AllArgsConstructor
+public class SyncStatus {
+    // 最近一次同步(无论成败)的时间
+    private final Date lastSyncTime;
+
+    // 最近一次成功同步的时间
+    private final Date lastSuccessTime;
+
+    // 本地HEAD版本号
+    private final String localHead;
+
+    // 最近一次拉取到的远程分支版本号
+    private final String remoteHead;
+
+    // 本地落后远程的提交数
+    private final int behind;
+
+    // 本地领先远程(尚未推送)的提交数
+    private final int ahead;
+
+    // 工作区有未提交的修改而未快进
+    private final boolean dirty;
+
+    // 连续失败次数，成功后清零
+    private final int consecutiveFailures;
+
+    // 累计失败次数
+    private final long totalFailures;
+
+    // 最近一次失败的原因
+    private final String lastError;
+
+    /**
+     * 本地有未推送的提交且远程分支有新提交，后台同步不合并，需要调用方处理
+     */
+    public boolean isDiverged() {
+        return ahead > 0 && behind > 0;
+    }
+
+    /**
+     * 最近一次成功同步距今的毫秒数，从未成功时为-1
+     */
+    public long getLagMillis() {
+        return lastSuccessTime == null ? -1 : System.currentTimeMillis() - lastSuccessTime.getTime();
+    }
+}
@@ -15,6 +15,9 @@ public class TreeItemVO extends BaseVO {
     // 文件绝对路径
     private String filePath;
 
+    // 相对git库的路径
+    private String relativePath;
+
     // 类型:文件file，目录dir
     private String type;
 
@@ -0,0 +1,176 @@
+package service;
+
+import entity.ArchiveFormat;
+import entity.CloneOptions;
+import entity.CommitField;
+import entity.CommitPage;
+import entity.CommitResult;
+import entity.DiffOptions;
+import entity.DiffSummary;
+import entity.HisFile;
+import entity.RestoreResult;
+import entity.TreeItemVO;
+import org.eclipse.jgit.lib.ObjectId;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * JGitService的异步版本，返回值与同步接口一致，出错时以null/false完成
+ * 并发规则：
+ * 1、读操作(历史、历史文件、对比、目录)不加锁，可任意并发；每次读取只解析一次HEAD，
+ *    写操作进行中读到的总是写入前或写入后的完整版本，需要多次读取同一版本时先取currentVersion()再按版本号读取
+ * 2、写操作(clone、提交、pull、上传、删除、新建目录、恢复)按仓库串行执行，不占用读线程
+ * 3、导出(补丁、变更包、历史文件zip、快照)与读操作相同，在读线程中执行
+ */
+public interface AsyncJGitService extends AutoCloseable {
+
+    /**
+     * @see JGitService#gitClone()
+     */
+    CompletableFuture<Boolean> gitClone();
+
+    /**
+     * @see JGitService#gitClone(CloneOptions)
+     */
+    CompletableFuture<Boolean> gitClone(CloneOptions options);
+
+    /**
+     * 当前版本号(HEAD)
+     */
+    CompletableFuture<String> currentVersion();
+
+    /**
+     * 游标分页读取提交历史
+     * @see JGitService#getHistory(String, String, int, Set)
+     */
+    CompletableFuture<CommitPage> getHistory(String path, String after, int limit, Set<CommitField> fields);
+
+    /**
+     * @see JGitService#getFileVersion(String, int)
+     */
+    CompletableFuture<List<Map<String, Object>>> getFileVersion(String fileName, int maxCount);
+
+    /**
+     * @see JGitService#getFileVersion(String, int, boolean)
+     */
+    CompletableFuture<List<Map<String, Object>>> getFileVersion(String fileName, int maxCount, boolean followRenames);
+
+    /**
+     * @see JGitService#getAllVersion(int)
+     */
+    CompletableFuture<List<Map<String, Object>>> getAllVersion(int maxCount);
+
+    /**
+     * @see JGitService#listChildren(String, String, int, int, int)
+     */
+    CompletableFuture<List<TreeItemVO>> listChildren(String commitId, String path, int depth, int offset, int limit);
+
+    /**
+     * @see JGitService#initDirTreeStatus()
+     */
+    CompletableFuture<TreeItemVO> initDirTreeStatus();
+
+    /**
+     * @see JGitService#status(Collection)
+     */
+    CompletableFuture<Map<String, String>> status(Collection<String> relativePaths);
+
+    /**
+     * @see JGitService#readHisFile(String[], String[])
+     */
+    CompletableFuture<Map<String, byte[]>> readHisFile(String []commitIds, String []relativePaths);
+
+    /**
+     * @see JGitService#readHisFiles(String[], String[])
+     */
+    CompletableFuture<List<HisFile>> readHisFiles(String []commitIds, String []relativePaths);
+
+    /**
+     * @see JGitService#writeHisFile(String, String, OutputStream)
+     */
+    CompletableFuture<Boolean> writeHisFile(String commitId, String relativePath, OutputStream out);
+
+    /**
+     * @see JGitService#diffSummary(ObjectId, ObjectId, DiffOptions)
+     */
+    CompletableFuture<DiffSummary> diffSummary(ObjectId treeId1, ObjectId treeId2, DiffOptions options);
+
+    /**
+     * @see JGitService#writePatch(ObjectId, ObjectId, DiffOptions, OutputStream)
+     */
+    CompletableFuture<Boolean> writePatch(ObjectId treeId1, ObjectId treeId2, DiffOptions options, OutputStream out);
+
+    /**
+     * @see JGitService#exportChangeset(ObjectId, ObjectId, DiffOptions, OutputStream)
+     */
+    CompletableFuture<Boolean> exportChangeset(ObjectId treeId1, ObjectId treeId2, DiffOptions options, OutputStream out);
+
+    /**
+     * @see JGitService#exportHisFiles(String[], String[], OutputStream)
+     */
+    CompletableFuture<Boolean> exportHisFiles(String []commitIds, String []relativePaths, OutputStream out);
+
+    /**
+     * @see JGitService#exportHisFiles(String[], String[], OutputStream, int)
+     */
+    CompletableFuture<Boolean> exportHisFiles(String []commitIds, String []relativePaths, OutputStream out, int level);
+
+    /**
+     * @see JGitService#exportSnapshot(String, String, ArchiveFormat, OutputStream)
+     */
+    CompletableFuture<Boolean> exportSnapshot(String commitId, String relativePath, ArchiveFormat format, OutputStream out);
+
+    /**
+     * @see JGitService#compressZipFile(Map, String)
+     */
+    CompletableFuture<Boolean> compressZipFile(Map<String, byte[]> dataMap, String relativePath);
+
+    /**
+     * @see JGitService#compressZipFile(Map, String, int)
+     */
+    CompletableFuture<Boolean> compressZipFile(Map<String, byte[]> dataMap, String relativePath, int level);
+
+    /**
+     * 提交，与其他提交请求合并执行
+     * @see JGitService#commitAsync(String, String)
+     */
+    CompletableFuture<CommitResult> commit(String relativePath, String msg);
+
+    /**
+     * @see JGitService#pullBranchToLocal()
+     */
+    CompletableFuture<Boolean> pullBranchToLocal();
+
+    /**
+     * @see JGitService#upload(MultipartFile, String)
+     */
+    CompletableFuture<Boolean> upload(MultipartFile file, String relativePath);
+
+    /**
+     * @see JGitService#deleteFile(String)
+     */
+    CompletableFuture<Boolean> deleteFile(String relativePath);
+
+    /**
+     * 恢复在写线程中执行，要求提交时在提交完成后完成
+     * @see JGitService#restore(String, Collection, String)
+     */
+    CompletableFuture<RestoreResult> restore(String commitId, Collection<String> relativePaths, String msg);
+
+    /**
+     * @see JGitService#createFolder(String)
+     */
+    CompletableFuture<Boolean> createFolder(String filePath);
+
+    /**
+     * 等待已提交的写操作完成后关闭
+     */
+    @Override
+    void close();
+}
@@ -1,11 +1,28 @@
 package service;
 
+import entity.ArchiveFormat;
+import entity.CacheStats;
+import entity.CloneOptions;
+import entity.CommitField;
+import entity.CommitPage;
+import entity.CommitResult;
+import entity.DiffOptions;
+import entity.DiffSummary;
+import entity.HisFile;
+import entity.RestoreResult;
+import entity.SyncStatus;
 import entity.TreeItemVO;
 import org.eclipse.jgit.lib.ObjectId;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 项目管理功能接口：提交、更新、项目分支管理、对比功能
@@ -14,25 +31,38 @@ import java.util.Map;
  * 3、对比不同版本文件差异
  * 4、数据的恢复
  */
-public interface JGitService {
+public interface JGitService extends AutoCloseable {
     /**
      * git clone，建立与远程仓库的联系，仅需要执行一次
+     * 选项来自gitlab.cloneSingleBranch、gitlab.cloneNoCheckout、gitlab.clonePaths
      */
     boolean gitClone();
 
     /**
-     * pull拉取远程仓库文件
+     * 按选项clone：只拉取配置的分支；不检出时历史和文件读取直接使用对象库，
+     * 工作区文件在首次上传、删除、按路径查询状态时写出，或clone后立即检出options.paths
+     */
+    boolean gitClone(CloneOptions options);
+
+    /**
+     * pull拉取远程仓库文件，立即同步一次
+     * 后台已按gitlab.syncIntervalMillis定时同步，不需要在每次操作前调用
      *
-     * @return true / false
+     * @return 已快进到远程版本(或已是最新)时返回true；工作区有未提交的修改、本地与远程已分叉(不自动合并)或拉取失败时返回false
      */
     boolean pullBranchToLocal();
 
+    /**
+     * 后台同步状态：最近同步时间、落后和领先的提交数、是否已分叉、失败次数
+     */
+    SyncStatus getSyncStatus();
+
     /**
      * 获取一个文件所有的版本(也就是提交记录)
      * 如果某一次的提交，包含了多个文件，其中包含了这个文件，该次提交也会被包含到结果其中
      *
      * @param fileName 带后缀的完整文件名的相对路径，如dir/test.doc
-     * @param maxCount 返回的版本个数
+     * @param maxCount 返回的最近版本个数，小于等于0时返回全部
      * @return  key             value                 类型
      *         commitName       提交人                String
      *         commitDate       提交日期              Date
@@ -42,6 +72,18 @@ public interface JGitService {
      */
     List<Map<String, Object>> getFileVersion(String fileName,int maxCount);
 
+    /**
+     * 获取一个文件所有的版本，followRenames时文件被移动或重命名之前的版本也包含在内，
+     * 只在文件被新增的提交上识别重命名(gitlab.renameLimit、gitlab.renameScore)，结果会被缓存
+     *
+     * @param fileName 带后缀的完整文件名的相对路径，如dir/test.doc
+     * @param maxCount 返回的最近版本个数，小于等于0时返回全部
+     * @param followRenames 是否跟随重命名，为false时与getFileVersion(fileName, maxCount)相同
+     * @return 同getFileVersion(fileName, maxCount)，followRenames时另有
+     *         relativePath     该版本中文件的相对路径(读取历史文件时使用)   String
+     */
+    List<Map<String, Object>> getFileVersion(String fileName, int maxCount, boolean followRenames);
+
     /**
      * 获取git版本的最近全部maxCount条差异信息
      *
@@ -55,6 +97,23 @@ public interface JGitService {
      */
     List<Map<String, Object>> getAllVersion(int maxCount);
 
+    /**
+     * 当前版本号(HEAD)，作为后续读取的一致快照(如listChildren(commitId, ...))
+     * @return 空仓库或出错时返回null
+     */
+    String currentVersion();
+
+    /**
+     * 游标分页读取提交历史，只解析请求的字段
+     *
+     * @param path 相对git库的文件或目录路径，为null时读取全部提交
+     * @param after 游标，上一页返回的nextCursor，为null时从最新的提交开始
+     * @param limit 每页条数
+     * @param fields 需要读取的字段，版本号总是返回
+     * @return 从新到旧的一页提交记录
+     */
+    CommitPage getHistory(String path, String after, int limit, Set<CommitField> fields);
+
     /**
      * 对比两个版本的差异，输出两个版本之间全部的操作
      *
@@ -63,6 +122,45 @@ public interface JGitService {
      */
     void difVersionInfo(ObjectId treeId1, ObjectId treeId2);
 
+    /**
+     * 对比两个版本的差异，返回每个文件的操作、路径、增减行数和差异块
+     *
+     * @param treeId1 新版本号
+     * @param treeId2 老版本号
+     * @param options 对比选项，nameOnly时只列出变化的文件，不对比内容
+     * @return 结果会被缓存并在相同的对比中复用，调用方不能修改
+     */
+    DiffSummary diffSummary(ObjectId treeId1, ObjectId treeId2, DiffOptions options);
+
+    /**
+     * 将两个版本的差异以unified diff格式直接写入输出流
+     *
+     * @param treeId1 新版本号
+     * @param treeId2 老版本号
+     * @param options 对比选项
+     * @param out 输出流，由调用方关闭
+     */
+    boolean writePatch(ObjectId treeId1, ObjectId treeId2, DiffOptions options, OutputStream out);
+
+    /**
+     * 将两个版本之间的变更以zip格式流式写入输出流：files/下为新增和修改的文件(新版本内容)，
+     * manifest.txt为全部变化的文件(格式同git diff --name-status，包含删除和重命名)，
+     * 不是nameOnly时附带changes.patch(unified diff，二进制文件只有一行说明)
+     *
+     * @param treeId1 新版本号
+     * @param treeId2 老版本号
+     * @param options 对比选项
+     * @param out 输出流，由调用方关闭
+     */
+    boolean exportChangeset(ObjectId treeId1, ObjectId treeId2, DiffOptions options, OutputStream out);
+
+    /**
+     * 缓存命中统计
+     * @return key为缓存名(diffSummary：版本对比结果，diffFile：单个文件内容对比结果，blob：历史文件内容，
+     *         rename：文件历史中的重命名识别结果)
+     */
+    Map<String, CacheStats> cacheStats();
+
     /**
      * 状态
      * @param relativePath 相对git库的文件路径
@@ -72,7 +170,14 @@ public interface JGitService {
     String status(String relativePath);
 
     /**
-     * 将文件列表提交到git仓库中
+     * 批量状态，一次遍历工作区得到全部结果
+     * @param relativePaths 相对git库的文件或目录路径，为空时计算整个工作区
+     * @return <相对路径，状态>，只包含有变化的文件(ADD / DELETE / MODIFY)，不在结果中的文件即为NONE
+     */
+    Map<String, String> status(Collection<String> relativePaths);
+
+    /**
+     * 将文件列表提交到git仓库中，等待提交完成后返回，推送在后台进行
      *
      * @param relativePath 相对git库的文件路径
      * @param msg 提交的备注信息
@@ -80,6 +185,27 @@ public interface JGitService {
      */
     String commitToGitRepository(String relativePath,String msg);
 
+    /**
+     * 异步提交，短时间内的多个提交请求合并为一次暂存区更新，每个请求保留自己的提交和备注
+     *
+     * @param relativePath 相对git库的文件或目录路径
+     * @param msg 提交的备注信息
+     * @return 提交完成时完成，包含版本号、提交的文件和推送结果
+     */
+    CompletableFuture<CommitResult> commitAsync(String relativePath, String msg);
+
+    /**
+     * 将文件或目录恢复为历史版本：一次遍历目标版本，只写出与之不一致的文件并同时更新暂存区，
+     * 目标版本中不存在的已跟踪文件被删除，未跟踪的文件保留
+     *
+     * @param commitId 通过getFileVersion()方法返回值中key为commitId的值
+     * @param relativePaths 相对git库的文件或目录路径，为空时恢复整个工作区
+     * @param msg 提交的备注信息，为null时只恢复工作区和暂存区，不提交
+     * @return 恢复结果，要求提交时等待提交完成(推送在后台进行)，本次写出和删除的文件合并为一个提交，
+     *         路径下其他未提交的修改不提交，没有写出和删除的文件时不提交；出错时返回null
+     */
+    RestoreResult restore(String commitId, Collection<String> relativePaths, String msg);
+
     /**
      *
      * @param commitIds  通过getFileVersion()方法返回值中key为commitId的值
@@ -92,10 +218,69 @@ public interface JGitService {
      *
      * @param commitIds  通过getFileVersion()方法返回值中key为commitId的值
      * @param relativePaths 相对git库的文件路径
-     * @return <文件名，文件字节数据>
+     * @return <相对路径，文件字节数据>，同一路径的多个版本以版本号前缀区分
      */
     Map<String,byte[]> readHisFile(String []commitIds, String []relativePaths);
 
+    /**
+     * 批量读取历史版本文件，按版本号分组并行读取，单个文件失败不影响其他文件
+     * @param commitIds  通过getFileVersion()方法返回值中key为commitId的值
+     * @param relativePaths 相对git库的文件路径
+     * @return 与参数顺序一致的结果，读取失败的条目error不为空；已缓存的文件可通过getBuffer()读取，不复制
+     */
+    List<HisFile> readHisFiles(String []commitIds, String []relativePaths);
+
+    /**
+     * 将一个历史版本文件直接写入输出流，不在内存中保留整个文件
+     * @param commitId  版本号
+     * @param relativePath 相对git库的文件路径
+     * @param out 输出流，由调用方关闭
+     */
+    boolean writeHisFile(String commitId, String relativePath, OutputStream out);
+
+    /**
+     * 将一个历史版本文件直接写入通道
+     * @param commitId  版本号
+     * @param relativePath 相对git库的文件路径
+     * @param channel 输出通道，由调用方关闭
+     */
+    boolean writeHisFile(String commitId, String relativePath, WritableByteChannel channel);
+
+    /**
+     * 读取一个历史版本文件，小文件直接返回缓存中的堆外内容，不复制
+     * @param commitId  版本号
+     * @param relativePath 相对git库的文件路径
+     * @return 只读内容；超过gitlab.blobCacheMaxEntryBytes的大文件不整个读入内存，返回null，请使用writeHisFile()；出错时返回null
+     */
+    ByteBuffer readHisFileBuffer(String commitId, String relativePath);
+
+    /**
+     * 将多个历史版本文件以zip格式流式写入输出流，entry名保留相对路径
+     * @param commitIds  通过getFileVersion()方法返回值中key为commitId的值
+     * @param relativePaths 相对git库的文件路径
+     * @param out 输出流，由调用方关闭
+     * @return 全部文件都写入时返回true，不存在的文件会被跳过
+     */
+    boolean exportHisFiles(String []commitIds, String []relativePaths, OutputStream out);
+
+    /**
+     * 将多个历史版本文件以zip格式写入输出流，各文件并行压缩，已压缩的格式直接存储
+     * @param level 压缩级别0-9，-1为默认级别，0为全部直接存储
+     * @see #exportHisFiles(String[], String[], OutputStream)
+     */
+    boolean exportHisFiles(String []commitIds, String []relativePaths, OutputStream out, int level);
+
+    /**
+     * 将一个版本中目录下的全部文件流式打包写入输出流，entry名保留相对git库的路径，
+     * 文件按在pack中的位置顺序读取，不在内存中保留文件内容
+     * @param commitId  版本号
+     * @param relativePath 相对git库的目录或文件路径，""为整个版本
+     * @param format 打包格式
+     * @param out 输出流，由调用方关闭
+     * @return 路径下没有文件或出错时返回false
+     */
+    boolean exportSnapshot(String commitId, String relativePath, ArchiveFormat format, OutputStream out);
+
     /**
      * 将readHisFile()返回值中的文件进行zip压缩
      * @param dataMap readHisFile()返回值
@@ -104,6 +289,13 @@ public interface JGitService {
      */
     boolean compressZipFile(Map<String, byte[]> dataMap, String relativePath);
 
+    /**
+     * 将readHisFile()返回值中的文件进行zip压缩，各文件并行压缩，已压缩的格式直接存储
+     * @param level 压缩级别0-9，-1为默认级别，0为全部直接存储
+     * @see #compressZipFile(Map, String)
+     */
+    boolean compressZipFile(Map<String, byte[]> dataMap, String relativePath, int level);
+
     /**
      * 根据git相对路径创建文件夹
      * @param filePath 相对git库的文件路径，支持多级目录创建
@@ -111,7 +303,7 @@ public interface JGitService {
     boolean createFolder(String filePath);
 
     /**
-     * 文件上传
+     * 文件上传，写入工作区的同时加入暂存区，内容与暂存区相同时不替换文件
      * @param file
      * @param relativePath  文件上传相对路径
      */
@@ -128,4 +320,31 @@ public interface JGitService {
      * @return 文件树的根节点
      */
     TreeItemVO initDirTreeStatus();
+
+    /**
+     * 按层级分页读取当前版本的目录，附带该层文件的工作区状态
+     * @param path 目录相对路径，""为根目录
+     * @param depth 展开层数，1只返回直接子节点
+     * @param offset 第一层跳过的条目数
+     * @param limit 每层最多返回的条目数
+     * @return 子节点列表(按文件名排序)
+     */
+    List<TreeItemVO> listChildren(String path, int depth, int offset, int limit);
+
+    /**
+     * 按层级分页读取历史版本的目录
+     * @param commitId 版本号，为null时等同于listChildren(path, depth, offset, limit)
+     * @param path 目录相对路径，""为根目录
+     * @param depth 展开层数，1只返回直接子节点
+     * @param offset 第一层跳过的条目数
+     * @param limit 每层最多返回的条目数
+     * @return 子节点列表(按文件名排序)
+     */
+    List<TreeItemVO> listChildren(String commitId, String path, int depth, int offset, int limit);
+
+    /**
+     * 释放本地仓库句柄(pack文件、缓存)，服务停止时调用
+     */
+    @Override
+    void close();
 }
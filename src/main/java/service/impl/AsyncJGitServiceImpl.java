@@ -0,0 +1,219 @@
+package service.impl;
+
+import entity.ArchiveFormat;
+import entity.CloneOptions;
+import entity.CommitField;
+import entity.CommitPage;
+import entity.CommitResult;
+import entity.DiffOptions;
+import entity.DiffSummary;
+import entity.HisFile;
+import entity.RestoreResult;
+import entity.TreeItemVO;
+import org.eclipse.jgit.lib.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.multipart.MultipartFile;
+import service.AsyncJGitService;
+import service.JGitService;
+
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * @ClassName AsyncJGitServiceImpl
+ * @Description 异步接口：读操作和导出在共用的异步线程池(虚拟线程或有界线程池)中并发执行，
+ *              写操作在本仓库的单个写线程中依次执行，并由仓库写锁与同步接口的写操作互斥
+ * @Author jinym
+ **/
+public class AsyncJGitServiceImpl implements AsyncJGitService {
+
+    private Logger log = LoggerFactory.getLogger(AsyncJGitServiceImpl.class);
+
+    private final JGitService delegate;
+
+    private final ExecutorService readers = GitExecutors.asyncPool();
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(GitExecutors.daemonThreads("jgit-write"));
+
+    public AsyncJGitServiceImpl() {
+        this(MeteredJGitService.wrap(new JGitServiceImpl(), RepositoryRegistry.defaultConfig().getName()));
+    }
+
+    /**
+     * @param delegate 同步实现，由本对象负责关闭
+     */
+    public AsyncJGitServiceImpl(JGitService delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> gitClone() {
+        return write(delegate::gitClone);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> gitClone(CloneOptions options) {
+        return write(() -> delegate.gitClone(options));
+    }
+
+    @Override
+    public CompletableFuture<String> currentVersion() {
+        return read(delegate::currentVersion);
+    }
+
+    @Override
+    public CompletableFuture<CommitPage> getHistory(String path, String after, int limit, Set<CommitField> fields) {
+        return read(() -> delegate.getHistory(path, after, limit, fields));
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, Object>>> getFileVersion(String fileName, int maxCount) {
+        return read(() -> delegate.getFileVersion(fileName, maxCount));
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, Object>>> getFileVersion(String fileName, int maxCount, boolean followRenames) {
+        return read(() -> delegate.getFileVersion(fileName, maxCount, followRenames));
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, Object>>> getAllVersion(int maxCount) {
+        return read(() -> delegate.getAllVersion(maxCount));
+    }
+
+    @Override
+    public CompletableFuture<List<TreeItemVO>> listChildren(String commitId, String path, int depth, int offset, int limit) {
+        return read(() -> delegate.listChildren(commitId, path, depth, offset, limit));
+    }
+
+    @Override
+    public CompletableFuture<TreeItemVO> initDirTreeStatus() {
+        return read(delegate::initDirTreeStatus);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> status(Collection<String> relativePaths) {
+        return read(() -> delegate.status(relativePaths));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, byte[]>> readHisFile(String[] commitIds, String[] relativePaths) {
+        return read(() -> delegate.readHisFile(commitIds, relativePaths));
+    }
+
+    @Override
+    public CompletableFuture<List<HisFile>> readHisFiles(String[] commitIds, String[] relativePaths) {
+        return read(() -> delegate.readHisFiles(commitIds, relativePaths));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> writeHisFile(String commitId, String relativePath, OutputStream out) {
+        return read(() -> delegate.writeHisFile(commitId, relativePath, out));
+    }
+
+    @Override
+    public CompletableFuture<DiffSummary> diffSummary(ObjectId treeId1, ObjectId treeId2, DiffOptions options) {
+        return read(() -> delegate.diffSummary(treeId1, treeId2, options));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> writePatch(ObjectId treeId1, ObjectId treeId2, DiffOptions options, OutputStream out) {
+        return read(() -> delegate.writePatch(treeId1, treeId2, options, out));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exportChangeset(ObjectId treeId1, ObjectId treeId2, DiffOptions options, OutputStream out) {
+        return read(() -> delegate.exportChangeset(treeId1, treeId2, options, out));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exportHisFiles(String[] commitIds, String[] relativePaths, OutputStream out) {
+        return read(() -> delegate.exportHisFiles(commitIds, relativePaths, out));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exportHisFiles(String[] commitIds, String[] relativePaths, OutputStream out, int level) {
+        return read(() -> delegate.exportHisFiles(commitIds, relativePaths, out, level));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exportSnapshot(String commitId, String relativePath, ArchiveFormat format, OutputStream out) {
+        return read(() -> delegate.exportSnapshot(commitId, relativePath, format, out));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> compressZipFile(Map<String, byte[]> dataMap, String relativePath) {
+        return read(() -> delegate.compressZipFile(dataMap, relativePath));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> compressZipFile(Map<String, byte[]> dataMap, String relativePath, int level) {
+        return read(() -> delegate.compressZipFile(dataMap, relativePath, level));
+    }
+
+    @Override
+    public CompletableFuture<CommitResult> commit(String relativePath, String msg) {
+        // 提交队列自己的提交线程已串行执行
+        return delegate.commitAsync(relativePath, msg);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> pullBranchToLocal() {
+        return write(delegate::pullBranchToLocal);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> upload(MultipartFile file, String relativePath) {
+        return write(() -> delegate.upload(file, relativePath));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteFile(String relativePath) {
+        return write(() -> delegate.deleteFile(relativePath));
+    }
+
+    @Override
+    public CompletableFuture<RestoreResult> restore(String commitId, Collection<String> relativePaths, String msg) {
+        return write(() -> delegate.restore(commitId, relativePaths, msg));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> createFolder(String filePath) {
+        return write(() -> delegate.createFolder(filePath));
+    }
+
+    private <T> CompletableFuture<T> read(Supplier<T> operation) {
+        return CompletableFuture.supplyAsync(operation, readers);
+    }
+
+    private <T> CompletableFuture<T> write(Supplier<T> operation) {
+        return CompletableFuture.supplyAsync(operation, writer);
+    }
+
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.error("写操作未在30秒内完成，强制关闭");
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            delegate.close();
+        } catch (Exception e) {
+            log.error("close()出错：" + e.getMessage());
+        }
+    }
+}
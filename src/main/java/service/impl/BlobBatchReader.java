@@ -0,0 +1,189 @@
+package service.impl;
+
+import entity.HisFile;
+import org.eclipse.jgit.lib.AsyncObjectLoaderQueue;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import utils.PathUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * @ClassName BlobBatchReader
+ * @Description 多版本文件批量读取：按版本号分组，每个版本只解析一次、遍历一次tree，
+ *              blob先查BlobCache，未缓存的通过共用的ObjectReader批量打开(不放入缓存)，不同版本在有界fork-join线程池中并行
+ * @Author jinym
+ **/
+public class BlobBatchReader {
+
+    private final Repository repository;
+
+    public BlobBatchReader(Repository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * 只定位文件，填充blobId和size，不读取内容
+     *
+     * @return 与参数顺序一致，失败的条目error不为空
+     */
+    public List<HisFile> resolve(String[] commitIds, String[] relativePaths) {
+        return run(commitIds, relativePaths, false);
+    }
+
+    /**
+     * 定位并读取文件内容
+     *
+     * @return 与参数顺序一致，失败的条目error不为空，其余条目不受影响
+     */
+    public List<HisFile> read(String[] commitIds, String[] relativePaths) {
+        return run(commitIds, relativePaths, true);
+    }
+
+    private List<HisFile> run(String[] commitIds, String[] relativePaths, boolean loadData) {
+        List<HisFile> results = new ArrayList<>(commitIds.length);
+        Map<String, List<HisFile>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < commitIds.length; i++) {
+            HisFile hisFile = new HisFile();
+            hisFile.setCommitId(commitIds[i]);
+            hisFile.setRelativePath(PathUtils.normalize(relativePaths[i]));
+            results.add(hisFile);
+            groups.computeIfAbsent(commitIds[i], k -> new ArrayList<>()).add(hisFile);
+        }
+        if (groups.size() == 1) {
+            Map.Entry<String, List<HisFile>> group = groups.entrySet().iterator().next();
+            readGroup(group.getKey(), group.getValue(), loadData);
+            return results;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (Map.Entry<String, List<HisFile>> group : groups.entrySet()) {
+            tasks.add(GitExecutors.readPool().submit(() -> readGroup(group.getKey(), group.getValue(), loadData)));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        return results;
+    }
+
+    /**
+     * 读取同一版本下的全部文件，异常只记录到该版本的条目中
+     */
+    private void readGroup(String commitId, List<HisFile> files, boolean loadData) {
+        try (ObjectReader reader = repository.newObjectReader(); RevWalk walk = new RevWalk(reader)) {
+            ObjectId objId = repository.resolve(commitId);
+            if (objId == null) {
+                fail(files, "版本号不存在：" + commitId);
+                return;
+            }
+            RevTree tree = walk.parseCommit(objId).getTree();
+
+            // 一次tree遍历定位全部路径
+            Map<String, List<HisFile>> byPath = new HashMap<>();
+            for (HisFile hisFile : files) {
+                if (hisFile.getRelativePath().isEmpty()) {
+                    hisFile.setError("路径为空");
+                } else {
+                    byPath.computeIfAbsent(hisFile.getRelativePath(), k -> new ArrayList<>()).add(hisFile);
+                }
+            }
+            Map<ObjectId, List<HisFile>> byBlob = new LinkedHashMap<>();
+            if (!byPath.isEmpty()) {
+                try (TreeWalk treeWalk = new TreeWalk(reader)) {
+                    treeWalk.addTree(tree);
+                    treeWalk.setRecursive(true);
+                    treeWalk.setFilter(PathFilterGroup.createFromStrings(byPath.keySet()));
+                    long entries = 0;
+                    while (treeWalk.next()) {
+                        entries++;
+                        List<HisFile> matched = byPath.remove(treeWalk.getPathString());
+                        if (matched != null) {
+                            ObjectId blobId = treeWalk.getObjectId(0);
+                            for (HisFile hisFile : matched) {
+                                hisFile.setBlobId(blobId);
+                            }
+                            byBlob.computeIfAbsent(blobId, k -> new ArrayList<>()).addAll(matched);
+                        }
+                    }
+                    GitMetrics.treeEntriesWalked(entries);
+                }
+            }
+            for (List<HisFile> missing : byPath.values()) {
+                for (HisFile hisFile : missing) {
+                    hisFile.setError("版本号：" + commitId + "在路径" + hisFile.getRelativePath() + "下无该文件");
+                }
+            }
+
+            if (!loadData) {
+                for (Map.Entry<ObjectId, List<HisFile>> entry : byBlob.entrySet()) {
+                    long size = reader.getObjectSize(entry.getKey(), Constants.OBJ_BLOB);
+                    for (HisFile hisFile : entry.getValue()) {
+                        hisFile.setSize(size);
+                    }
+                }
+                return;
+            }
+            // 热点文件直接引用缓存的只读内容，其余的批量打开；批量读取的文件不放入缓存
+            BlobCache cache = BlobCache.getInstance();
+            List<ObjectId> uncached = new ArrayList<>();
+            for (Map.Entry<ObjectId, List<HisFile>> entry : byBlob.entrySet()) {
+                ByteBuffer cached = cache.get(entry.getKey());
+                if (cached == null) {
+                    uncached.add(entry.getKey());
+                    continue;
+                }
+                for (HisFile hisFile : entry.getValue()) {
+                    hisFile.setSize(cached.remaining());
+                    hisFile.setBuffer(cached);
+                }
+            }
+            if (uncached.isEmpty()) {
+                return;
+            }
+            AsyncObjectLoaderQueue<ObjectId> queue = reader.open(uncached, true);
+            try {
+                while (queue.next()) {
+                    ObjectLoader loader = queue.open();
+                    // 小对象的缓存数组可能与delta base缓存共用，需复制
+                    byte[] data = loader.isLarge() ? loader.getCachedBytes(Integer.MAX_VALUE) : loader.getBytes();
+                    GitMetrics.objectsLoaded(1, data.length);
+                    setData(byBlob.get(queue.getObjectId()), data);
+                }
+            } finally {
+                queue.release();
+            }
+        } catch (IOException | RuntimeException e) {
+            for (HisFile hisFile : files) {
+                if (hisFile.getError() == null && (loadData ? hisFile.getBuffer() == null : hisFile.getBlobId() == null)) {
+                    hisFile.setError(e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void setData(List<HisFile> files, byte[] data) {
+        for (HisFile hisFile : files) {
+            hisFile.setSize(data.length);
+            hisFile.setData(data);
+        }
+    }
+
+    private static void fail(List<HisFile> files, String msg) {
+        for (HisFile hisFile : files) {
+            hisFile.setError(msg);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package service.impl;
+
+import entity.CacheStats;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import utils.PropertiesUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @ClassName BlobCache
+ * @Description 热点历史文件内容缓存：按blob id缓存，内容不可变，所有仓库共用，只按字节上限LRU淘汰；
+ *              内容放在堆外(direct buffer)，不增加GC扫描和复制的负担，读取时返回只读的ByteBuffer；
+ *              只有单个文件的读取会放入缓存，且同一blob在最近被读取过(第二次读取)时才放入，批量导出只查询不放入
+ * @Author jinym
+ **/
+public class BlobCache {
+
+    private static final BlobCache INSTANCE = new BlobCache();
+
+    // 每个条目除内容外的估算开销(键、buffer对象、链表节点)
+    private static final long ENTRY_OVERHEAD = 160;
+
+    // 超过该大小的blob不缓存，以流的方式读取
+    private final long maxEntryBytes = PropertiesUtils.getBytes("gitlab.blobCacheMaxEntryBytes", 4L * 1024 * 1024);
+
+    // 字节上限，小于等于0时不缓存
+    private final long maxBytes = PropertiesUtils.getBytes("gitlab.blobCacheBytes", 64L * 1024 * 1024);
+
+    private final WeightedLruCache<ObjectId, ByteBuffer> blobs = new WeightedLruCache<>(maxBytes,
+            buffer -> buffer.capacity() + ENTRY_OVERHEAD);
+
+    // 最近读取过一次、尚未放入缓存的blob id个数上限
+    private final int admitWindow = PropertiesUtils.getInt("gitlab.blobCacheAdmitWindow", 10000);
+
+    // 最近读取过一次的blob id，按访问顺序淘汰
+    private final Map<ObjectId, Boolean> seen = new LinkedHashMap<ObjectId, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ObjectId, Boolean> eldest) {
+            return size() > admitWindow;
+        }
+    };
+
+    private BlobCache() {
+    }
+
+    public static BlobCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return 只读的内容，position为0，各调用方互不影响；未缓存时返回null
+     */
+    public ByteBuffer get(ObjectId blobId) {
+        ByteBuffer buffer = blobs.get(blobId);
+        return buffer == null ? null : buffer.duplicate();
+    }
+
+    /**
+     * 单个文件的读取：已缓存时返回缓存的内容，否则从loader读取，最近读取过的blob放入缓存
+     *
+     * @return 只读的内容；大文件返回null，调用方继续使用loader以流的方式读取
+     */
+    public ByteBuffer load(ObjectId blobId, ObjectLoader loader) throws IOException {
+        if (loader.isLarge() || loader.getSize() > maxEntryBytes) {
+            return null;
+        }
+        ByteBuffer cached = get(blobId);
+        if (cached != null) {
+            return cached;
+        }
+        byte[] data = loader.getCachedBytes();
+        if (loader.getSize() + ENTRY_OVERHEAD > maxBytes || !admit(blobId)) {
+            return ByteBuffer.wrap(data).asReadOnlyBuffer();
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data).flip();
+        // 淘汰的buffer可能仍被调用方读取，由GC回收堆外内存，不主动释放
+        ByteBuffer readOnly = buffer.asReadOnlyBuffer();
+        blobs.put(blobId.copy(), readOnly);
+        return readOnly.duplicate();
+    }
+
+    /**
+     * 第一次读取只记录blob id，窗口内再次读取时放入缓存，只读一次的文件不挤掉常用文件
+     */
+    private boolean admit(ObjectId blobId) {
+        synchronized (seen) {
+            if (seen.remove(blobId) != null) {
+                return true;
+            }
+            seen.put(blobId.copy(), Boolean.TRUE);
+            return false;
+        }
+    }
+
+    public CacheStats stats() {
+        return blobs.stats();
+    }
+
+    public void clear() {
+        blobs.clear();
+        synchronized (seen) {
+            seen.clear();
+        }
+    }
+}
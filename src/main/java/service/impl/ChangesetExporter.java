@@ -0,0 +1,141 @@
+package service.impl;
+
+import entity.DiffOptions;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * @ClassName ChangesetExporter
+ * @Description 两个版本之间的变更包：一次只比较文件名的tree对比并识别重命名，新增和修改的文件以新版本内容流式写入zip，
+ *              删除和重命名记录在清单中，可选附带unified diff；文件内容在压缩线程中按blob读取，不在内存中保留
+ * @Author jinym
+ **/
+public class ChangesetExporter {
+
+    // 变化的文件在zip中的目录
+    static final String FILES_DIR = "files/";
+
+    // 变更清单，与git diff --name-status相同的格式
+    static final String MANIFEST = "manifest.txt";
+
+    static final String PATCH = "changes.patch";
+
+    private final Repository repository;
+
+    public ChangesetExporter(Repository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * 写出变更包
+     *
+     * @param newId   新版本(tree或commit)
+     * @param oldId   老版本(tree或commit)
+     * @param options 对比选项，nameOnly时不附带unified diff
+     * @param out     输出流，由调用方关闭
+     * @return 变化的文件数
+     */
+    public int write(ObjectId newId, ObjectId oldId, DiffOptions options, ZipPackager packager, OutputStream out)
+            throws IOException {
+        DiffEngine engine = new DiffEngine(repository);
+        List<DiffEntry> entries = engine.detectRenames(engine.scan(newId, oldId));
+        packager.add(MANIFEST, manifest(newId, oldId, entries));
+        if (!options.isNameOnly()) {
+            packager.add(PATCH, () -> patch(engine, entries, options));
+        }
+        try (HisFileExporter exporter = new HisFileExporter(repository)) {
+            for (DiffEntry entry : entries) {
+                if (isExported(entry)) {
+                    ObjectId blobId = entry.getNewId().toObjectId();
+                    packager.add(FILES_DIR + entry.getNewPath(), () -> exporter.openStream(blobId));
+                }
+            }
+            packager.writeTo(out);
+        }
+        return entries.size();
+    }
+
+    /**
+     * 新版本中内容有变化的文件：新增、修改，以及内容也有变化的重命名和复制
+     */
+    private static boolean isExported(DiffEntry entry) {
+        if (entry.getChangeType() == DiffEntry.ChangeType.DELETE || entry.getNewMode() == FileMode.GITLINK) {
+            return false;
+        }
+        return entry.getChangeType() == DiffEntry.ChangeType.ADD || !entry.getOldId().equals(entry.getNewId());
+    }
+
+    /**
+     * 首行为两个版本号，之后每行一个文件：状态、(重命名和复制的老路径)、路径，以tab分隔
+     */
+    private byte[] manifest(ObjectId newId, ObjectId oldId, List<DiffEntry> entries) throws IOException {
+        StringBuilder manifest = new StringBuilder();
+        try (RevWalk walk = new RevWalk(repository)) {
+            manifest.append("# ").append(walk.parseAny(oldId).name()).append("..")
+                    .append(walk.parseAny(newId).name()).append('\n');
+        }
+        for (DiffEntry entry : entries) {
+            switch (entry.getChangeType()) {
+                case ADD:
+                    manifest.append("A\t").append(entry.getNewPath());
+                    break;
+                case DELETE:
+                    manifest.append("D\t").append(entry.getOldPath());
+                    break;
+                case RENAME:
+                    manifest.append('R').append(entry.getScore()).append('\t')
+                            .append(entry.getOldPath()).append('\t').append(entry.getNewPath());
+                    break;
+                case COPY:
+                    manifest.append('C').append(entry.getScore()).append('\t')
+                            .append(entry.getOldPath()).append('\t').append(entry.getNewPath());
+                    break;
+                default:
+                    manifest.append("M\t").append(entry.getNewPath());
+                    break;
+            }
+            manifest.append('\n');
+        }
+        return manifest.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 在压缩线程中生成unified diff到临时文件，读取完关闭时删除
+     */
+    private static InputStream patch(DiffEngine engine, List<DiffEntry> entries, DiffOptions options) throws IOException {
+        File tmp = File.createTempFile("jgit-patch", ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+                engine.writePatch(entries, options, out);
+            }
+            return new FilterInputStream(new FileInputStream(tmp)) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        Files.deleteIfExists(tmp.toPath());
+                    }
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp.toPath());
+            throw e;
+        }
+    }
+}
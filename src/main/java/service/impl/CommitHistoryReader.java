@@ -0,0 +1,197 @@
+package service.impl;
+
+import entity.CommitField;
+import entity.CommitPage;
+import entity.CommitRecord;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.TreeRevFilter;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @ClassName CommitHistoryReader
+ * @Description 游标分页的提交历史：RevWalk不保留提交正文，只有请求了作者/提交人/备注时才逐条解析正文并立即释放；
+ *              游标中带有继续遍历的起点，下一页从起点开始，不再从HEAD重新遍历
+ * @Author jinym
+ **/
+public class CommitHistoryReader {
+
+    private static final char CURSOR_SEPARATOR = ':';
+
+    private final Repository repository;
+
+    private final PathHistoryIndex pathIndex;
+
+    public CommitHistoryReader(Repository repository, PathHistoryIndex pathIndex) {
+        this.repository = repository;
+        this.pathIndex = pathIndex;
+    }
+
+    /**
+     * 读取一页提交记录
+     *
+     * @param path   相对git库的文件或目录路径，为null时读取全部提交
+     * @param after  游标，上一页的nextCursor，为null时从HEAD开始
+     * @param limit  每页条数
+     * @param fields 需要读取的字段，版本号总是返回
+     */
+    public CommitPage page(String path, String after, int limit, Set<CommitField> fields) throws IOException {
+        ObjectId head = repository.resolve(Constants.HEAD);
+        if (head == null || limit <= 0) {
+            return new CommitPage(Collections.<CommitRecord>emptyList(), null);
+        }
+        // 游标：<上一页最后的提交>:<继续遍历的起点,...>，只有版本号时从该提交的父提交继续
+        String last = after;
+        List<ObjectId> startIds = null;
+        if (after != null && after.indexOf(CURSOR_SEPARATOR) >= 0) {
+            last = after.substring(0, after.indexOf(CURSOR_SEPARATOR));
+            startIds = new ArrayList<>();
+            for (String id : after.substring(after.indexOf(CURSOR_SEPARATOR) + 1).split(",")) {
+                startIds.add(resolveCursor(id));
+            }
+        }
+        ObjectId afterId = last == null ? null : resolveCursor(last);
+        boolean needsBody = false;
+        for (CommitField field : fields) {
+            needsBody |= field.needsBody();
+        }
+        try (RevWalk walk = new RevWalk(repository)) {
+            walk.setRetainBody(false);
+            if (path != null && pathIndex != null) {
+                List<ObjectId> indexed = pathIndex.newest(head, path, 0);
+                if (indexed != null) {
+                    return pageOf(walk, indexed, afterId, limit, fields, needsBody);
+                }
+            }
+            List<RevCommit> starts = new ArrayList<>();
+            if (afterId == null) {
+                starts.add(walk.parseCommit(head));
+            } else if (startIds == null) {
+                Collections.addAll(starts, walk.parseCommit(afterId).getParents());
+            } else {
+                for (ObjectId startId : startIds) {
+                    starts.add(walk.parseCommit(startId));
+                }
+            }
+            for (RevCommit start : starts) {
+                walk.markStart(start);
+            }
+            // 从游标继续遍历，不再从HEAD开始跳过之前的提交；记录遍历过的提交以计算下一页的起点
+            Recorder recorder = new Recorder(path == null ? null : new TreeRevFilter(walk,
+                    AndTreeFilter.create(PathFilterGroup.createFromStrings(path), TreeFilter.ANY_DIFF)));
+            walk.setRevFilter(recorder);
+            List<CommitRecord> records = new ArrayList<>(limit);
+            RevCommit commit;
+            while (records.size() < limit && (commit = walk.next()) != null) {
+                records.add(toRecord(walk, commit, fields, needsBody));
+            }
+            RevCommit more = records.size() == limit ? walk.next() : null;
+            if (more == null) {
+                return new CommitPage(records, null);
+            }
+            // 多看的一个提交不算遍历过，作为下一页的第一个提交
+            recorder.passed.remove(more);
+            Set<RevCommit> frontier = new LinkedHashSet<>(starts);
+            for (RevCommit passed : recorder.passed) {
+                Collections.addAll(frontier, passed.getParents());
+            }
+            frontier.removeAll(recorder.passed);
+            StringBuilder nextCursor = new StringBuilder(records.get(records.size() - 1).getCommitId())
+                    .append(CURSOR_SEPARATOR);
+            for (RevCommit start : frontier) {
+                if (nextCursor.charAt(nextCursor.length() - 1) != CURSOR_SEPARATOR) {
+                    nextCursor.append(',');
+                }
+                nextCursor.append(start.name());
+            }
+            return new CommitPage(records, nextCursor.toString());
+        }
+    }
+
+    private ObjectId resolveCursor(String id) throws IOException {
+        ObjectId objectId = repository.resolve(id);
+        if (objectId == null) {
+            throw new IOException("游标版本号不存在：" + id);
+        }
+        return objectId;
+    }
+
+    /**
+     * 文件历史索引命中时，直接在索引结果中定位游标
+     */
+    private CommitPage pageOf(RevWalk walk, List<ObjectId> commitIds, ObjectId afterId, int limit,
+                              Set<CommitField> fields, boolean needsBody) throws IOException {
+        int start = afterId == null ? 0 : commitIds.indexOf(afterId) + 1;
+        if (afterId != null && start == 0) {
+            return new CommitPage(Collections.<CommitRecord>emptyList(), null);
+        }
+        int end = Math.min(commitIds.size(), start + limit);
+        List<CommitRecord> records = new ArrayList<>(end - start);
+        for (ObjectId commitId : commitIds.subList(start, end)) {
+            records.add(toRecord(walk, walk.parseCommit(commitId), fields, needsBody));
+        }
+        String nextCursor = end < commitIds.size() ? records.get(records.size() - 1).getCommitId() : null;
+        return new CommitPage(records, nextCursor);
+    }
+
+    private static CommitRecord toRecord(RevWalk walk, RevCommit commit, Set<CommitField> fields,
+                                         boolean needsBody) throws IOException {
+        if (needsBody) {
+            walk.parseBody(commit);
+        }
+        PersonIdent author = fields.contains(CommitField.AUTHOR) ? commit.getAuthorIdent() : null;
+        PersonIdent committer = fields.contains(CommitField.COMMITTER) ? commit.getCommitterIdent() : null;
+        CommitRecord record = new CommitRecord(
+                commit.getName(),
+                fields.contains(CommitField.TREE) ? commit.getTree().copy() : null,
+                author == null ? null : author.getName(),
+                author == null ? null : author.getEmailAddress(),
+                author == null ? null : author.getWhen(),
+                committer == null ? null : committer.getName(),
+                committer == null ? null : committer.getEmailAddress(),
+                fields.contains(CommitField.TIME) ? new Date(commit.getCommitTime() * 1000L) : null,
+                fields.contains(CommitField.MESSAGE) ? commit.getFullMessage() : null);
+        if (needsBody) {
+            commit.disposeBody();
+        }
+        return record;
+    }
+
+    /**
+     * 记录遍历中取出的每个提交(包括不修改该路径而未返回的)，按路径过滤时交给TreeRevFilter判断
+     */
+    private static final class Recorder extends RevFilter {
+        private final RevFilter delegate;
+        private final Set<RevCommit> passed = new LinkedHashSet<>();
+
+        Recorder(RevFilter delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean include(RevWalk walker, RevCommit commit) throws IOException {
+            passed.add(commit);
+            return delegate == null || delegate.include(walker, commit);
+        }
+
+        @Override
+        public RevFilter clone() {
+            return new Recorder(delegate == null ? null : delegate.clone());
+        }
+    }
+}
@@ -0,0 +1,593 @@
+package service.impl;
+
+import entity.CommitResult;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.PropertiesUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+
+/**
+ * @ClassName CommitQueue
+ * @Description 合并提交：在很短的时间窗口内收集提交请求(文件路径数达到上限时提前结束)，每个请求生成一个保留自己备注的提交并依次串联，
+ *              整批只加一次暂存区锁、更新一次分支；推送异步执行，推送期间的新提交合并到下一次推送。
+ *              提交和推送在各仓库共用的线程池中执行，同一仓库同时只有一个提交任务和一个推送任务
+ * @Author jinym
+ **/
+public class CommitQueue implements AutoCloseable {
+
+    // 同一批提交在分支被其他写入方更新时的重试次数
+    private static final int MAX_RETRIES = 3;
+
+    // 关闭时等待正在进行的提交和推送的最长时间
+    private static final long CLOSE_WAIT_MILLIS = 30 * 1000L;
+
+    private Logger log = LoggerFactory.getLogger(CommitQueue.class);
+
+    // 收集同一批请求的时间窗口
+    private final long windowMillis = PropertiesUtils.getLong("gitlab.commitWindowMillis", 50L);
+
+    // 一批最多合并的文件路径数(各请求的路径数之和)
+    private final int maxFiles = PropertiesUtils.getInt("gitlab.commitMaxFiles", 200);
+
+    private final Callable<Repository> repositorySupplier;
+
+    private final CredentialsProvider credentials;
+
+    private final Consumer<List<String>> onCommitted;
+
+    // 等待提交的请求，队列和以下状态都在持有queue的锁时读写
+    private final Queue<Request> queue = new ArrayDeque<>();
+
+    // 队列中请求的路径数之和
+    private int queuedFiles = 0;
+
+    // 正在等待时间窗口结束
+    private boolean waiting = false;
+
+    // 当前时间窗口的序号，提前开始提交后，原时间窗口到期时不再开始提交
+    private long window = 0;
+
+    // 提交任务正在执行
+    private boolean running = false;
+
+    // 等待推送的提交
+    private final List<CompletableFuture<Boolean>> pendingPush = new ArrayList<>();
+
+    private volatile boolean closed = false;
+
+    private volatile Runnable onRejected = null;
+
+    /**
+     * @param repositorySupplier 获取仓库，用完会close()
+     * @param credentials        推送使用的账户
+     * @param onCommitted        每批提交成功后以本批提交的文件回调(刷新目录树状态、文件历史索引等)
+     */
+    public CommitQueue(Callable<Repository> repositorySupplier, CredentialsProvider credentials,
+                       Consumer<List<String>> onCommitted) {
+        this.repositorySupplier = repositorySupplier;
+        this.credentials = credentials;
+        this.onCommitted = onCommitted;
+    }
+
+    /**
+     * 推送因远程分支有新提交而被拒绝时回调(同步并合并远程版本后重新推送)
+     */
+    public void setOnRejected(Runnable onRejected) {
+        this.onRejected = onRejected;
+    }
+
+    /**
+     * 推送本地尚未推送的提交，与提交后的推送合并
+     *
+     * @return 推送结果
+     */
+    public CompletableFuture<Boolean> requestPush() {
+        CompletableFuture<Boolean> pushed = new CompletableFuture<>();
+        if (closed) {
+            pushed.complete(false);
+        } else {
+            schedulePush(pushed);
+        }
+        return pushed;
+    }
+
+    /**
+     * 提交一个文件或目录下的全部修改
+     *
+     * @param relativePath 相对git库的文件或目录路径
+     * @param msg          提交的备注信息
+     * @return 提交完成时完成，推送结果在CommitResult.getPushed()中另行完成
+     */
+    public CompletableFuture<CommitResult> submit(String relativePath, String msg) {
+        return submit(Collections.singletonList(relativePath), msg);
+    }
+
+    /**
+     * 多个文件或目录下的全部修改作为一个提交
+     *
+     * @param relativePaths 相对git库的文件或目录路径，包含""时提交整个工作区
+     * @param msg           提交的备注信息
+     */
+    public CompletableFuture<CommitResult> submit(Collection<String> relativePaths, String msg) {
+        Request request = new Request(relativePaths, msg);
+        // 与close()互斥，关闭后不会再有请求进入队列
+        synchronized (queue) {
+            if (closed) {
+                request.future.completeExceptionally(new IllegalStateException("提交队列已关闭"));
+                return request.future;
+            }
+            queue.add(request);
+            queuedFiles += request.relativePaths.size();
+            if (!waiting && !running) {
+                // 第一个请求开始计时，时间窗口内的请求合并为一批
+                waiting = true;
+                long current = ++window;
+                GitExecutors.scheduler().schedule(() -> windowClosed(current), windowMillis, TimeUnit.MILLISECONDS);
+            }
+            if (waiting && queuedFiles >= maxFiles) {
+                // 路径数已达上限，不再等待时间窗口
+                startCommit();
+            }
+        }
+        return request.future;
+    }
+
+    private void windowClosed(long closedWindow) {
+        synchronized (queue) {
+            if (waiting && window == closedWindow) {
+                startCommit();
+            }
+        }
+    }
+
+    /**
+     * 调用方持有queue的锁
+     */
+    private void startCommit() {
+        waiting = false;
+        running = true;
+        GitExecutors.commitPool().execute(this::run);
+    }
+
+    /**
+     * 依次提交队列中的请求，每批的路径数不超过gitlab.commitMaxFiles(单个请求超过时单独成批)，队列为空时结束
+     */
+    private void run() {
+        while (true) {
+            List<Request> batch = new ArrayList<>();
+            synchronized (queue) {
+                int files = 0;
+                while (!queue.isEmpty()
+                        && (batch.isEmpty() || files + queue.peek().relativePaths.size() <= maxFiles)) {
+                    Request request = queue.poll();
+                    files += request.relativePaths.size();
+                    batch.add(request);
+                }
+                queuedFiles -= files;
+                if (batch.isEmpty()) {
+                    running = false;
+                    queue.notifyAll();
+                    return;
+                }
+            }
+            try {
+                commitBatch(batch);
+            } catch (Exception e) {
+                log.error("git 提交出错：" + e.getMessage());
+                for (Request request : batch) {
+                    request.future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 一批请求：加锁读取暂存区，每个请求在内存中的DirCache上生成tree和提交，
+     * 分支更新成功后再把全部修改写回暂存区
+     */
+    private void commitBatch(List<Request> batch) throws Exception {
+        long start = System.currentTimeMillis();
+        try (Repository repository = repositorySupplier.call()) {
+            Lock lock = RepositoryManager.getInstance().writeLock(repository.getWorkTree().getPath());
+            for (int attempt = 1; ; attempt++) {
+                List<CommitResult> results;
+                lock.lock();
+                try {
+                    results = tryCommit(repository, batch);
+                } finally {
+                    lock.unlock();
+                }
+                if (results != null) {
+                    List<String> files = new ArrayList<>();
+                    for (CommitResult result : results) {
+                        files.addAll(result.getFiles());
+                    }
+                    log.info("git commit success，合并请求数：" + batch.size() + "，文件数：" + files.size()
+                            + "，耗时：" + (System.currentTimeMillis() - start) + "ms");
+                    for (int i = 0; i < batch.size(); i++) {
+                        batch.get(i).future.complete(results.get(i));
+                    }
+                    if (!files.isEmpty()) {
+                        // 提交已生效，回调出错不影响本批的结果
+                        try {
+                            onCommitted.accept(files);
+                        } catch (Exception e) {
+                            log.error("提交后回调出错：" + e.getMessage());
+                        }
+                    }
+                    return;
+                }
+                if (attempt >= MAX_RETRIES) {
+                    throw new IOException("分支被并发更新，提交失败");
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 各请求的结果；HEAD在提交期间被其他写入方更新时返回null，由调用方重试
+     */
+    private List<CommitResult> tryCommit(Repository repository, List<Request> batch) throws IOException {
+        DirCache index = repository.lockDirCache();
+        boolean written = false;
+        try (ObjectInserter inserter = repository.newObjectInserter();
+             RevWalk walk = new RevWalk(repository)) {
+            ObjectId head = repository.resolve(Constants.HEAD);
+            // 从HEAD的tree开始，每个请求只修改自己路径下的条目
+            DirCache tree = DirCache.newInCore();
+            DirCacheBuilder builder = tree.builder();
+            if (head != null) {
+                builder.addTree(new byte[0], DirCacheEntry.STAGE_0, walk.getObjectReader(), walk.parseCommit(head).getTree());
+            }
+            builder.finish();
+
+            ObjectId parent = head;
+            Map<String, DirCacheEntry> changed = new LinkedHashMap<>();
+            // 本批已提交的路径 -> 提交，同一文件被多个请求提交时后面的请求返回已包含该文件的提交
+            Map<String, ObjectId> committedBy = new LinkedHashMap<>();
+            List<ObjectId> commitIds = new ArrayList<>();
+            List<List<String>> files = new ArrayList<>();
+            for (Request request : batch) {
+                Map<String, DirCacheEntry> edits = scan(repository, tree, index, inserter, request.relativePaths);
+                ObjectId commitId;
+                if (edits.isEmpty()) {
+                    commitId = lastCommitOf(committedBy, request.relativePaths);
+                    if (commitId == null) {
+                        log.error("提交的文件内容都没有被修改，不能提交：" + request.relativePaths);
+                    }
+                } else {
+                    apply(tree, edits);
+                    CommitBuilder commit = new CommitBuilder();
+                    commit.setTreeId(tree.writeTree(inserter));
+                    if (parent != null) {
+                        commit.setParentId(parent);
+                    }
+                    PersonIdent ident = new PersonIdent(repository);
+                    commit.setAuthor(ident);
+                    commit.setCommitter(ident);
+                    commit.setMessage(request.msg);
+                    commitId = inserter.insert(commit);
+                    parent = commitId;
+                    changed.putAll(edits);
+                    for (String path : edits.keySet()) {
+                        committedBy.put(path, commitId);
+                    }
+                }
+                commitIds.add(commitId);
+                files.add(new ArrayList<>(edits.keySet()));
+            }
+            if (parent == null || parent.equals(head)) {
+                return results(commitIds, files, false);
+            }
+            inserter.flush();
+
+            RefUpdate update = repository.updateRef(Constants.HEAD);
+            update.setNewObjectId(parent);
+            update.setExpectedOldObjectId(head == null ? ObjectId.zeroId() : head);
+            update.setRefLogMessage("commit: " + batch.get(batch.size() - 1).msg, false);
+            RefUpdate.Result result = update.update(walk);
+            if (result != RefUpdate.Result.NEW && result != RefUpdate.Result.FAST_FORWARD) {
+                log.error("更新分支失败：" + result + "，重试");
+                return null;
+            }
+            apply(index, changed);
+            index.write();
+            index.commit();
+            written = true;
+            return results(commitIds, files, true);
+        } finally {
+            if (!written) {
+                index.unlock();
+            }
+        }
+    }
+
+    /**
+     * 对比工作区与待提交的tree，变化的文件写入对象库
+     *
+     * @return <路径，新的暂存区条目>，删除的文件条目为null
+     */
+    private static Map<String, DirCacheEntry> scan(Repository repository, DirCache tree, DirCache index,
+                                                   ObjectInserter inserter, List<String> relativePaths) throws IOException {
+        Map<String, DirCacheEntry> edits = new LinkedHashMap<>();
+        try (TreeWalk treeWalk = new TreeWalk(repository)) {
+            // 与WorkingTreeStatus相同的三棵树顺序：待提交的tree、暂存区、工作区
+            treeWalk.addTree(new DirCacheIterator(tree));
+            treeWalk.addTree(new DirCacheIterator(index));
+            FileTreeIterator workTree = new FileTreeIterator(repository);
+            workTree.setDirCacheIterator(treeWalk, 1);
+            treeWalk.addTree(workTree);
+            if (!relativePaths.contains("")) {
+                treeWalk.setFilter(PathFilterGroup.createFromStrings(relativePaths));
+            }
+            long entries = 0;
+            while (treeWalk.next()) {
+                entries++;
+                if (treeWalk.isSubtree()) {
+                    if (!WorkingTreeStatus.isUntrackedIgnored(treeWalk)) {
+                        treeWalk.enterSubtree();
+                    }
+                    continue;
+                }
+                boolean inTree = treeWalk.getRawMode(0) != FileMode.TYPE_MISSING;
+                DirCacheIterator indexEntry = treeWalk.getTree(1, DirCacheIterator.class);
+                WorkingTreeIterator file = treeWalk.getTree(2, WorkingTreeIterator.class);
+                String path = treeWalk.getPathString();
+                if (file == null) {
+                    // 延迟检出尚未写出的文件不是删除
+                    if (inTree && (indexEntry == null || !indexEntry.getDirCacheEntry().isAssumeValid())) {
+                        edits.put(path, null);
+                    }
+                    continue;
+                }
+                if (file.getEntryFileMode() == FileMode.GITLINK
+                        || (!inTree && indexEntry == null && file.isEntryIgnored())) {
+                    continue;
+                }
+                FileMode mode = file.getIndexFileMode(indexEntry);
+                ObjectId id;
+                if (indexEntry != null && !file.isModified(indexEntry.getDirCacheEntry(), true, treeWalk.getObjectReader())) {
+                    // 与暂存区一致，不需要重新读取文件
+                    id = indexEntry.getEntryObjectId();
+                } else {
+                    try (InputStream in = file.openEntryStream()) {
+                        id = inserter.insert(Constants.OBJ_BLOB, file.getEntryContentLength(), in);
+                    }
+                }
+                if (inTree && id.equals(treeWalk.getObjectId(0)) && mode.getBits() == treeWalk.getRawMode(0)) {
+                    continue;
+                }
+                DirCacheEntry entry = new DirCacheEntry(path);
+                entry.setObjectId(id);
+                entry.setFileMode(mode);
+                entry.setLength(file.getEntryLength());
+                entry.setLastModified(file.getEntryLastModifiedInstant());
+                edits.put(path, entry);
+            }
+            GitMetrics.treeEntriesWalked(entries);
+        }
+        return edits;
+    }
+
+    private static void apply(DirCache dirCache, Map<String, DirCacheEntry> edits) {
+        DirCacheEditor editor = dirCache.editor();
+        for (Map.Entry<String, DirCacheEntry> edit : edits.entrySet()) {
+            DirCacheEntry entry = edit.getValue();
+            if (entry == null) {
+                editor.add(new DirCacheEditor.DeletePath(edit.getKey()));
+            } else {
+                editor.add(new DirCacheEditor.PathEdit(entry) {
+                    @Override
+                    public void apply(DirCacheEntry ent) {
+                        ent.copyMetaData(entry);
+                        ent.setObjectId(entry.getObjectId());
+                    }
+                });
+            }
+        }
+        editor.finish();
+    }
+
+    private static ObjectId lastCommitOf(Map<String, ObjectId> committedBy, List<String> relativePaths) {
+        ObjectId commitId = null;
+        for (Map.Entry<String, ObjectId> entry : committedBy.entrySet()) {
+            for (String relativePath : relativePaths) {
+                String prefix = relativePath.endsWith("/") ? relativePath : relativePath + "/";
+                if (relativePath.isEmpty() || entry.getKey().equals(relativePath) || entry.getKey().startsWith(prefix)) {
+                    commitId = entry.getValue();
+                    break;
+                }
+            }
+        }
+        return commitId;
+    }
+
+    private List<CommitResult> results(List<ObjectId> commitIds, List<List<String>> files, boolean push) {
+        List<CommitResult> results = new ArrayList<>(commitIds.size());
+        for (int i = 0; i < commitIds.size(); i++) {
+            ObjectId commitId = commitIds.get(i);
+            CompletableFuture<Boolean> pushed = new CompletableFuture<>();
+            if (commitId == null || !push) {
+                pushed.complete(commitId != null);
+            } else {
+                schedulePush(pushed);
+            }
+            results.add(new CommitResult(commitId == null ? null : commitId.name(), files.get(i), pushed));
+        }
+        return results;
+    }
+
+    /**
+     * 推送线程空闲时立即推送，否则等当前推送结束后把期间的全部提交一次推送
+     */
+    private void schedulePush(CompletableFuture<Boolean> pushed) {
+        boolean idle;
+        synchronized (pendingPush) {
+            idle = pendingPush.isEmpty();
+            pendingPush.add(pushed);
+        }
+        if (idle) {
+            execute(this::push);
+        }
+    }
+
+    private void execute(Runnable task) {
+        try {
+            GitExecutors.syncPool().execute(task);
+        } catch (RejectedExecutionException e) {
+            log.error("推送线程池不再接收任务，未推送");
+            failPending();
+        }
+    }
+
+    private void push() {
+        List<CompletableFuture<Boolean>> waiting;
+        synchronized (pendingPush) {
+            waiting = new ArrayList<>(pendingPush);
+        }
+        boolean ok = false;
+        boolean rejected = false;
+        try (Repository repository = repositorySupplier.call()) {
+            ok = true;
+            for (PushResult result : Git.wrap(repository).push().setCredentialsProvider(credentials).call()) {
+                for (RemoteRefUpdate update : result.getRemoteUpdates()) {
+                    if (update.getStatus() != RemoteRefUpdate.Status.OK
+                            && update.getStatus() != RemoteRefUpdate.Status.UP_TO_DATE) {
+                        log.error("git push 被拒绝：" + update.getRemoteName() + " " + update.getStatus());
+                        ok = false;
+                        rejected |= update.getStatus() == RemoteRefUpdate.Status.REJECTED_NONFASTFORWARD
+                                || update.getStatus() == RemoteRefUpdate.Status.REJECTED_REMOTE_CHANGED;
+                    }
+                }
+            }
+            if (ok) {
+                log.info("git push success，提交数：" + waiting.size());
+            }
+        } catch (Exception e) {
+            log.error("git push 出错：" + e.getMessage());
+            ok = false;
+        }
+        boolean more;
+        synchronized (pendingPush) {
+            pendingPush.subList(0, waiting.size()).clear();
+            more = !pendingPush.isEmpty();
+            if (!more) {
+                pendingPush.notifyAll();
+            }
+        }
+        for (CompletableFuture<Boolean> future : waiting) {
+            future.complete(ok);
+        }
+        Runnable callback = onRejected;
+        if (rejected && callback != null && !closed) {
+            callback.run();
+        }
+        if (more) {
+            execute(this::push);
+        }
+    }
+
+    /**
+     * 停止接收请求，未处理的请求以异常完成；正在进行的提交和推送最多等待30秒，之后未推送的结果以false完成
+     */
+    @Override
+    public void close() {
+        long deadline = System.currentTimeMillis() + CLOSE_WAIT_MILLIS;
+        List<Request> rest = new ArrayList<>();
+        try {
+            synchronized (queue) {
+                closed = true;
+                rest.addAll(queue);
+                queue.clear();
+                queuedFiles = 0;
+                waiting = false;
+                for (Request request : rest) {
+                    request.future.completeExceptionally(new IllegalStateException("提交队列已关闭"));
+                }
+                // 正在执行的一批提交完成后，队列已空，提交任务随即结束
+                while (running && System.currentTimeMillis() < deadline) {
+                    queue.wait(deadline - System.currentTimeMillis());
+                }
+            }
+            synchronized (pendingPush) {
+                while (!pendingPush.isEmpty() && System.currentTimeMillis() < deadline) {
+                    pendingPush.wait(deadline - System.currentTimeMillis());
+                }
+                if (!pendingPush.isEmpty()) {
+                    log.error("推送未在" + CLOSE_WAIT_MILLIS / 1000 + "秒内完成，不再等待");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failPending();
+    }
+
+    /**
+     * 未能推送的提交保留在本地，下次同步后推送
+     */
+    private void failPending() {
+        List<CompletableFuture<Boolean>> waiting;
+        synchronized (pendingPush) {
+            waiting = new ArrayList<>(pendingPush);
+            pendingPush.clear();
+        }
+        for (CompletableFuture<Boolean> future : waiting) {
+            future.complete(false);
+        }
+    }
+
+    private static class Request {
+        final List<String> relativePaths = new ArrayList<>();
+        final String msg;
+        final CompletableFuture<CommitResult> future = new CompletableFuture<>();
+
+        Request(Collection<String> relativePaths, String msg) {
+            for (String relativePath : relativePaths) {
+                this.relativePaths.add(relativePath == null ? "" : relativePath);
+            }
+            if (this.relativePaths.isEmpty()) {
+                this.relativePaths.add("");
+            }
+            this.msg = msg;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package service.impl;
+
+import entity.CacheStats;
+import entity.DiffOptions;
+import entity.DiffSummary;
+import entity.FileDiff;
+import org.eclipse.jgit.lib.ObjectId;
+import utils.PropertiesUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * @ClassName DiffCache
+ * @Description 版本对比结果缓存：tree id和blob id内容不可变，结果永不失效，按估算字节数LRU淘汰；
+ *              放入和取出时都复制，调用方修改返回的结果不影响缓存
+ * @Author jinym
+ **/
+public class DiffCache {
+
+    // 两个版本的对比结果
+    private final WeightedLruCache<Key, DiffSummary> summaries = new WeightedLruCache<>(
+            PropertiesUtils.getBytes("gitlab.diffCacheBytes", 32L * 1024 * 1024), DiffCache::weigh);
+
+    // 单个文件两个blob的内容对比结果
+    private final WeightedLruCache<Key, FileDiff> fileDiffs = new WeightedLruCache<>(
+            PropertiesUtils.getBytes("gitlab.diffFileCacheBytes", 16L * 1024 * 1024), DiffCache::weigh);
+
+    /**
+     * @return 缓存结果的副本，文件列表和差异块列表不可修改；未缓存时返回null
+     */
+    public DiffSummary getSummary(ObjectId oldTreeId, ObjectId newTreeId, DiffOptions options) {
+        DiffSummary summary = summaries.get(new Key(oldTreeId, newTreeId, options));
+        return summary == null ? null : copy(summary);
+    }
+
+    public void putSummary(ObjectId oldTreeId, ObjectId newTreeId, DiffOptions options, DiffSummary summary) {
+        summaries.put(new Key(oldTreeId, newTreeId, options), copy(summary));
+    }
+
+    /**
+     * @return 只有内容相关的字段(增减行数、差异块、是否二进制)有意义
+     */
+    public FileDiff getFileDiff(ObjectId oldBlobId, ObjectId newBlobId, DiffOptions options) {
+        FileDiff fileDiff = fileDiffs.get(new Key(oldBlobId, newBlobId, options));
+        return fileDiff == null ? null : copy(fileDiff);
+    }
+
+    public void putFileDiff(ObjectId oldBlobId, ObjectId newBlobId, DiffOptions options, FileDiff fileDiff) {
+        fileDiffs.put(new Key(oldBlobId, newBlobId, options), copy(fileDiff));
+    }
+
+    public CacheStats summaryStats() {
+        return summaries.stats();
+    }
+
+    public CacheStats fileDiffStats() {
+        return fileDiffs.stats();
+    }
+
+    private static DiffSummary copy(DiffSummary summary) {
+        DiffSummary copy = new DiffSummary();
+        copy.setOldTreeId(summary.getOldTreeId());
+        copy.setNewTreeId(summary.getNewTreeId());
+        copy.setLinesAdded(summary.getLinesAdded());
+        copy.setLinesRemoved(summary.getLinesRemoved());
+        List<FileDiff> files = new ArrayList<>(summary.getFiles().size());
+        for (FileDiff fileDiff : summary.getFiles()) {
+            files.add(copy(fileDiff));
+        }
+        copy.setFiles(Collections.unmodifiableList(files));
+        return copy;
+    }
+
+    /**
+     * HunkRange不可变，差异块只复制列表
+     */
+    private static FileDiff copy(FileDiff fileDiff) {
+        FileDiff copy = new FileDiff();
+        copy.setChangeType(fileDiff.getChangeType());
+        copy.setOldPath(fileDiff.getOldPath());
+        copy.setNewPath(fileDiff.getNewPath());
+        copy.setOldId(fileDiff.getOldId());
+        copy.setNewId(fileDiff.getNewId());
+        copy.setLinesAdded(fileDiff.getLinesAdded());
+        copy.setLinesRemoved(fileDiff.getLinesRemoved());
+        copy.setOldSize(fileDiff.getOldSize());
+        copy.setNewSize(fileDiff.getNewSize());
+        copy.setBinary(fileDiff.isBinary());
+        copy.setOversized(fileDiff.isOversized());
+        copy.setHunks(Collections.unmodifiableList(new ArrayList<>(fileDiff.getHunks())));
+        return copy;
+    }
+
+    private static long weigh(DiffSummary summary) {
+        long weight = 128;
+        for (FileDiff fileDiff : summary.getFiles()) {
+            weight += weigh(fileDiff);
+        }
+        return weight;
+    }
+
+    private static long weigh(FileDiff fileDiff) {
+        return 160 + 2L * (fileDiff.getOldPath().length() + fileDiff.getNewPath().length())
+                + 32L * fileDiff.getHunks().size();
+    }
+
+    /**
+     * (老对象, 新对象, 影响结果的对比选项)
+     */
+    private static final class Key {
+        private final ObjectId oldId;
+        private final ObjectId newId;
+        private final boolean nameOnly;
+        private final Object comparator;
+        private final Object algorithm;
+        private final long bigFileThreshold;
+        private final int contextLines;
+
+        Key(ObjectId oldId, ObjectId newId, DiffOptions options) {
+            this.oldId = oldId.copy();
+            this.newId = newId.copy();
+            this.nameOnly = options.isNameOnly();
+            this.comparator = options.getComparator();
+            this.algorithm = options.getAlgorithm();
+            this.bigFileThreshold = options.getBigFileThreshold();
+            this.contextLines = options.getContextLines();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return nameOnly == key.nameOnly && contextLines == key.contextLines && comparator == key.comparator
+                    && algorithm == key.algorithm && bigFileThreshold == key.bigFileThreshold
+                    && oldId.equals(key.oldId) && newId.equals(key.newId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(oldId, newId, nameOnly, System.identityHashCode(comparator), algorithm, bigFileThreshold,
+                    contextLines);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package service.impl;
+
+import entity.DiffOptions;
+import entity.DiffSummary;
+import entity.FileDiff;
+import entity.HunkRange;
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.errors.BinaryBlobException;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import utils.PropertiesUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * @ClassName DiffEngine
+ * @Description 版本对比：一次只比较文件名的tree对比得到变化的文件，再在有界线程池中并行对比各文件内容，
+ *              每个文件只对比一次；大文件和二进制文件只比较大小和blob id
+ * @Author jinym
+ **/
+public class DiffEngine {
+
+    // 默认的大文件阈值，超过的文件不对比内容
+    private static final long BIG_FILE_THRESHOLD = PropertiesUtils.getBytes("gitlab.diffBigFileThreshold", 5L * 1024 * 1024);
+
+    private final Repository repository;
+
+    private final DiffCache cache;
+
+    public DiffEngine(Repository repository) {
+        this(repository, null);
+    }
+
+    /**
+     * @param cache 对比结果缓存，为null时不缓存
+     */
+    public DiffEngine(Repository repository, DiffCache cache) {
+        this.repository = repository;
+        this.cache = cache;
+    }
+
+    /**
+     * 对比两个版本
+     *
+     * @param newTreeId 新版本(tree或commit)
+     * @param oldTreeId 老版本(tree或commit)
+     * @return 对比结果，调用方可以修改，不影响缓存
+     */
+    public DiffSummary summarize(ObjectId newTreeId, ObjectId oldTreeId, DiffOptions options) throws IOException {
+        if (cache == null) {
+            return compute(newTreeId, oldTreeId, options);
+        }
+        // 以tree id为键，commit id和其tree id命中同一条缓存
+        ObjectId newTree;
+        ObjectId oldTree;
+        try (RevWalk walk = new RevWalk(repository)) {
+            newTree = walk.parseTree(newTreeId).copy();
+            oldTree = walk.parseTree(oldTreeId).copy();
+        }
+        DiffSummary summary = cache.getSummary(oldTree, newTree, options);
+        if (summary == null) {
+            summary = compute(newTree, oldTree, options);
+            cache.putSummary(oldTree, newTree, options, summary);
+        }
+        return summary;
+    }
+
+    private DiffSummary compute(ObjectId newTreeId, ObjectId oldTreeId, DiffOptions options) throws IOException {
+        List<DiffEntry> entries = scan(newTreeId, oldTreeId);
+        DiffSummary summary = new DiffSummary();
+        summary.setNewTreeId(newTreeId);
+        summary.setOldTreeId(oldTreeId);
+        List<FileDiff> files = new ArrayList<>(entries.size());
+        if (options.isNameOnly()) {
+            for (DiffEntry entry : entries) {
+                files.add(toFileDiff(entry));
+            }
+        } else {
+            List<CompletableFuture<FileDiff>> futures = new ArrayList<>(entries.size());
+            for (DiffEntry entry : entries) {
+                futures.add(CompletableFuture.supplyAsync(() -> diffFile(entry, options), GitExecutors.diffPool()));
+            }
+            try {
+                for (CompletableFuture<FileDiff> future : futures) {
+                    files.add(future.join());
+                }
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                throw e;
+            }
+        }
+        for (FileDiff fileDiff : files) {
+            summary.setLinesAdded(summary.getLinesAdded() + fileDiff.getLinesAdded());
+            summary.setLinesRemoved(summary.getLinesRemoved() + fileDiff.getLinesRemoved());
+        }
+        summary.setFiles(files);
+        return summary;
+    }
+
+    /**
+     * 将两个版本的unified diff直接写入输出流
+     */
+    public void writePatch(ObjectId newTreeId, ObjectId oldTreeId, DiffOptions options, OutputStream out) throws IOException {
+        writePatch(scan(newTreeId, oldTreeId), options, out);
+    }
+
+    /**
+     * 将已得到的文件变化写为unified diff，二进制和超过大文件阈值的文件只输出一行说明
+     */
+    void writePatch(List<DiffEntry> entries, DiffOptions options, OutputStream out) throws IOException {
+        try (DiffFormatter df = new DiffFormatter(out)) {
+            df.setRepository(repository);
+            df.setDiffComparator(options.getComparator());
+            df.setDiffAlgorithm(DiffAlgorithm.getAlgorithm(options.getAlgorithm()));
+            df.setBinaryFileThreshold(bigFileThreshold(options));
+            df.setContext(options.getContextLines());
+            df.format(entries);
+            df.flush();
+        }
+    }
+
+    /**
+     * 只比较文件名和blob的tree对比，不读取文件内容
+     */
+    List<DiffEntry> scan(ObjectId newTreeId, ObjectId oldTreeId) throws IOException {
+        try (RevWalk walk = new RevWalk(repository); TreeWalk treeWalk = new TreeWalk(walk.getObjectReader())) {
+            treeWalk.addTree(walk.parseTree(oldTreeId));
+            treeWalk.addTree(walk.parseTree(newTreeId));
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            return DiffEntry.scan(treeWalk);
+        }
+    }
+
+    /**
+     * 把scan()结果中成对的删除和新增合并为重命名、复制，只有这些文件需要读取内容比较相似度，
+     * 数量超过仓库配置的diff.renameLimit时只识别内容完全相同的重命名
+     */
+    List<DiffEntry> detectRenames(List<DiffEntry> entries) throws IOException {
+        RenameDetector detector = new RenameDetector(repository);
+        detector.addAll(entries);
+        try (ObjectReader reader = repository.newObjectReader()) {
+            return detector.compute(reader, NullProgressMonitor.INSTANCE);
+        }
+    }
+
+    /**
+     * 对比单个文件内容，在线程池中执行，每个任务使用自己的ObjectReader
+     */
+    private FileDiff diffFile(DiffEntry entry, DiffOptions options) {
+        FileDiff fileDiff = toFileDiff(entry);
+        ObjectId oldId = fileDiff.getOldId();
+        ObjectId newId = fileDiff.getNewId();
+        FileDiff cached = cache == null ? null : cache.getFileDiff(oldId, newId, options);
+        if (cached != null) {
+            // 同一对blob在不同版本对比、重命名中内容结果相同，只复制内容相关字段
+            fileDiff.setOldSize(cached.getOldSize());
+            fileDiff.setNewSize(cached.getNewSize());
+            fileDiff.setBinary(cached.isBinary());
+            fileDiff.setOversized(cached.isOversized());
+            fileDiff.setLinesAdded(cached.getLinesAdded());
+            fileDiff.setLinesRemoved(cached.getLinesRemoved());
+            fileDiff.setHunks(cached.getHunks());
+            return fileDiff;
+        }
+        diffContent(entry, fileDiff, options);
+        if (cache != null) {
+            cache.putFileDiff(oldId, newId, options, fileDiff);
+        }
+        return fileDiff;
+    }
+
+    /**
+     * 先从对象头读取大小，超过阈值的文件不读取内容；
+     * 其余文件由RawText.load()嗅探开头的字节，二进制文件不再读取剩余内容
+     */
+    private void diffContent(DiffEntry entry, FileDiff fileDiff, DiffOptions options) {
+        int threshold = bigFileThreshold(options);
+        try (ObjectReader reader = repository.newObjectReader()) {
+            fileDiff.setOldSize(size(reader, entry.getOldId(), entry.getOldMode()));
+            fileDiff.setNewSize(size(reader, entry.getNewId(), entry.getNewMode()));
+            if (entry.getOldMode() == FileMode.GITLINK || entry.getNewMode() == FileMode.GITLINK) {
+                fileDiff.setBinary(true);
+                return;
+            }
+            if (fileDiff.getOldSize() > threshold || fileDiff.getNewSize() > threshold) {
+                fileDiff.setBinary(true);
+                fileDiff.setOversized(true);
+                return;
+            }
+            RawText oldText = load(reader, entry.getOldId(), entry.getOldMode(), threshold);
+            RawText newText = load(reader, entry.getNewId(), entry.getNewMode(), threshold);
+            if (oldText == null || newText == null) {
+                fileDiff.setBinary(true);
+                return;
+            }
+            EditList edits = DiffAlgorithm.getAlgorithm(options.getAlgorithm())
+                    .diff(options.getComparator(), oldText, newText);
+            fillEdits(fileDiff, edits, oldText.size(), newText.size(), options.getContextLines());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 统计增减行数，并按上下文合并为差异块(与DiffFormatter的分块方式一致)
+     */
+    static void fillEdits(FileDiff fileDiff, EditList edits, int oldSize, int newSize, int context) {
+        int added = 0;
+        int removed = 0;
+        for (Edit edit : edits) {
+            removed += edit.getLengthA();
+            added += edit.getLengthB();
+        }
+        fileDiff.setLinesAdded(added);
+        fileDiff.setLinesRemoved(removed);
+        List<HunkRange> hunks = new ArrayList<>();
+        int i = 0;
+        while (i < edits.size()) {
+            int j = i;
+            while (j + 1 < edits.size() && edits.get(j + 1).getBeginA() - edits.get(j).getEndA() <= 2 * context) {
+                j++;
+            }
+            Edit first = edits.get(i);
+            Edit last = edits.get(j);
+            int oldStart = Math.max(0, first.getBeginA() - context);
+            int oldEnd = Math.min(oldSize, last.getEndA() + context);
+            int newStart = Math.max(0, first.getBeginB() - context);
+            int newEnd = Math.min(newSize, last.getEndB() + context);
+            hunks.add(new HunkRange(oldEnd > oldStart ? oldStart + 1 : oldStart, oldEnd - oldStart,
+                    newEnd > newStart ? newStart + 1 : newStart, newEnd - newStart));
+            i = j + 1;
+        }
+        fileDiff.setHunks(hunks);
+    }
+
+    /**
+     * 只读取对象头中的大小，不解压内容
+     */
+    private static long size(ObjectReader reader, AbbreviatedObjectId id, FileMode mode) throws IOException {
+        if (mode == FileMode.MISSING || mode == FileMode.GITLINK) {
+            return 0;
+        }
+        return reader.getObjectSize(id.toObjectId(), Constants.OBJ_BLOB);
+    }
+
+    /**
+     * 读取文本内容，不存在的一侧为空内容，二进制文件返回null
+     */
+    private static RawText load(ObjectReader reader, AbbreviatedObjectId id, FileMode mode, int threshold) throws IOException {
+        if (mode == FileMode.MISSING) {
+            return new RawText(new byte[0]);
+        }
+        try {
+            ObjectLoader loader = reader.open(id.toObjectId(), Constants.OBJ_BLOB);
+            GitMetrics.objectsLoaded(1, loader.getSize());
+            return RawText.load(loader, threshold);
+        } catch (BinaryBlobException e) {
+            return null;
+        }
+    }
+
+    private static int bigFileThreshold(DiffOptions options) {
+        long threshold = options.getBigFileThreshold() > 0 ? options.getBigFileThreshold() : BIG_FILE_THRESHOLD;
+        return (int) Math.min(threshold, Integer.MAX_VALUE - 8);
+    }
+
+    static FileDiff toFileDiff(DiffEntry entry) {
+        FileDiff fileDiff = new FileDiff();
+        fileDiff.setChangeType(entry.getChangeType());
+        fileDiff.setOldPath(entry.getOldPath());
+        fileDiff.setNewPath(entry.getNewPath());
+        fileDiff.setOldId(entry.getOldId().toObjectId());
+        fileDiff.setNewId(entry.getNewId().toObjectId());
+        return fileDiff;
+    }
+}
@@ -0,0 +1,406 @@
+package service.impl;
+
+import entity.TreeItemVO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.PathUtils;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * @ClassName DirTreeCache
+ * @Description 常驻内存的文件目录树：首次请求时建立一次，之后由共用的DirTreeWatcher和服务自身的写操作增量维护，
+ *              每次变化只更新受影响的节点及其状态；延迟检出时尚未写出的文件从暂存区补充。
+ *              状态和暂存区在锁外读取(会获取仓库的锁)，期间目录树有其他更新时重新读取
+ * @Author jinym
+ **/
+public class DirTreeCache implements AutoCloseable {
+
+    private static final String GIT_DIR = ".git";
+
+    // 锁外读取的状态被其他更新打断时的最多尝试次数
+    private static final int MAX_ATTEMPTS = 3;
+
+    private Logger log = LoggerFactory.getLogger(DirTreeCache.class);
+
+    private final File workTree;
+
+    // 批量状态查询，<相对路径，状态>中只包含有变化的文件
+    private final Function<Collection<String>, Map<String, String>> statusProvider;
+
+    // 相对路径 -> 节点，根节点为""
+    private final Map<String, TreeItemVO> nodes = new HashMap<>();
+
+    // 本目录树在DirTreeWatcher中注册的目录
+    private final List<WatchKey> watchKeys = new ArrayList<>();
+
+    // 延迟检出时尚未写出到工作区的文件(相对路径)，这些节点来自暂存区
+    private final Supplier<Collection<String>> pendingProvider;
+
+    // 建立目录树时工作区是否有尚未检出的文件，没有时不再查询暂存区
+    private volatile boolean lazy = false;
+
+    // 只在持有本对象的锁时读写，对外只返回副本
+    private TreeItemVO root = null;
+
+    // 目录树每次变化(包括丢弃)时加一，锁外读取的结果只在期间没有变化时生效
+    private long version = 0;
+
+    public DirTreeCache(String localPath, Function<Collection<String>, Map<String, String>> statusProvider) {
+        this(localPath, statusProvider, Collections::emptyList);
+    }
+
+    /**
+     * @param pendingProvider 延迟检出(noCheckout)时尚未写出的文件，与磁盘上的文件一起组成目录树
+     */
+    public DirTreeCache(String localPath, Function<Collection<String>, Map<String, String>> statusProvider,
+                        Supplier<Collection<String>> pendingProvider) {
+        this.workTree = new File(localPath).getAbsoluteFile();
+        this.statusProvider = statusProvider;
+        this.pendingProvider = pendingProvider;
+    }
+
+    /**
+     * 获取目录树，未建立时扫描一次磁盘并计算一次状态
+     *
+     * @return 文件树根节点的副本，之后的增量更新不影响已返回的树，调用方修改它也不影响缓存
+     */
+    public TreeItemVO getTree() {
+        for (int attempt = 1; ; attempt++) {
+            long seen;
+            synchronized (this) {
+                if (root != null) {
+                    return copyOf(root);
+                }
+                seen = version;
+            }
+            Map<String, String> statusMap = statusProvider.apply(Collections.<String>emptyList());
+            Collection<String> pending = pendingProvider.get();
+            synchronized (this) {
+                if (root != null) {
+                    return copyOf(root);
+                }
+                // 多次被打断时使用最后一次的结果，之后的变化仍会增量更新
+                if (version == seen || attempt >= MAX_ATTEMPTS) {
+                    build(statusMap == null ? Collections.<String, String>emptyMap() : statusMap, pending);
+                    return copyOf(root);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按磁盘现状同步某个文件或目录(新增、删除、修改)，同时刷新其状态
+     *
+     * @param relativePath 相对git库的路径
+     */
+    public void refresh(String relativePath) {
+        String path = PathUtils.normalize(relativePath);
+        File file = new File(workTree, path);
+        Collection<String> pending = lazy ? pendingProvider.get() : Collections.<String>emptyList();
+        synchronized (this) {
+            version++;
+            if (root == null) {
+                return;
+            }
+            if (!file.exists()) {
+                removeNode(path);
+                // 尚未检出的文件仍在目录树中
+                addPending(pending, path);
+                return;
+            }
+            TreeItemVO parent = ensureDir(parentOf(path));
+            TreeItemVO node = nodes.get(path);
+            if (node != null && !node.getType().equals(file.isDirectory() ? "dir" : "file")) {
+                removeNode(path);
+                node = null;
+            }
+            if (node == null) {
+                node = scan(file, path);
+                parent.getChildren().add(node);
+            } else if (file.isDirectory()) {
+                // 已存在的目录：补充磁盘上新出现的子节点
+                syncChildren(node, file, path, pending);
+            }
+        }
+        refreshStatus(Collections.singletonList(path));
+    }
+
+    /**
+     * 只刷新状态，如提交后文件变为NONE
+     *
+     * @param relativePaths 相对git库的文件或目录路径
+     */
+    public void refreshStatus(Collection<String> relativePaths) {
+        if (relativePaths.isEmpty()) {
+            return;
+        }
+        List<String> paths = new ArrayList<>();
+        for (String relativePath : relativePaths) {
+            paths.add(PathUtils.normalize(relativePath));
+        }
+        // 根目录不加路径过滤，查询整个工作区
+        List<String> filter = paths.contains("") ? Collections.<String>emptyList() : paths;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            long seen;
+            synchronized (this) {
+                if (root == null) {
+                    return;
+                }
+                seen = version;
+            }
+            Map<String, String> statusMap = statusProvider.apply(filter);
+            if (statusMap == null) {
+                return;
+            }
+            synchronized (this) {
+                if (root == null) {
+                    return;
+                }
+                if (version == seen) {
+                    version++;
+                    for (String path : paths) {
+                        TreeItemVO node = nodes.get(path);
+                        if (node != null) {
+                            applyStatus(node, path, statusMap);
+                        }
+                    }
+                    return;
+                }
+            }
+        }
+        // 一直被其他更新打断，丢弃目录树，下次请求时重建
+        log.info("目录树状态刷新多次被打断，将在下次请求时重建");
+        invalidate();
+    }
+
+    /**
+     * 丢弃目录树，下次请求时重建
+     */
+    public synchronized void invalidate() {
+        version++;
+        root = null;
+        nodes.clear();
+        DirTreeWatcher.getInstance().cancel(watchKeys);
+        watchKeys.clear();
+    }
+
+    @Override
+    public void close() {
+        invalidate();
+    }
+
+    /**
+     * 调用方持有本对象的锁，状态和尚未检出的文件已在锁外读取
+     */
+    private void build(Map<String, String> statusMap, Collection<String> pending) {
+        long start = System.currentTimeMillis();
+        version++;
+        nodes.clear();
+        TreeItemVO tree = scan(workTree, "");
+        lazy = !pending.isEmpty();
+        addPending(pending, "");
+        applyStatus(tree, "", statusMap);
+        root = tree;
+        log.info("建立文件目录树完成，节点数：" + nodes.size() + "，耗时：" + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * 扫描磁盘建立子树，状态由调用方统一设置
+     */
+    private TreeItemVO scan(File file, String path) {
+        TreeItemVO treeItemVO = new TreeItemVO();
+        treeItemVO.setFileName(file.getName());
+        treeItemVO.setFilePath(file.getAbsolutePath());
+        nodes.put(path, treeItemVO);
+        if (file.isDirectory()) {
+            treeItemVO.setType("dir");
+            watch(file, path);
+            List<TreeItemVO> children = new ArrayList<>();
+            File[] fileArr = file.listFiles();
+            if (fileArr != null) {
+                for (File child : fileArr) {
+                    if (!child.getName().equals(GIT_DIR)) {  // 过滤.git目录
+                        children.add(scan(child, childOf(path, child.getName())));
+                    }
+                }
+            }
+            treeItemVO.setChildren(children);
+        } else {
+            treeItemVO.setType("file");
+            treeItemVO.setStatus(WorkingTreeStatus.NONE);
+            treeItemVO.setChildren(new ArrayList<TreeItemVO>());
+        }
+        return treeItemVO;
+    }
+
+    /**
+     * 补充prefix下尚未检出的文件节点，所在目录不存在时一并建立
+     */
+    private void addPending(Collection<String> pending, String prefix) {
+        String dirPrefix = prefix.isEmpty() ? "" : prefix + "/";
+        for (String path : pending) {
+            if ((path.equals(prefix) || path.startsWith(dirPrefix)) && !nodes.containsKey(path)) {
+                TreeItemVO parent = ensureDir(parentOf(path));
+                TreeItemVO node = newNode(path, "file");
+                node.setStatus(WorkingTreeStatus.NONE);
+                parent.getChildren().add(node);
+            }
+        }
+    }
+
+    private void syncChildren(TreeItemVO node, File dir, String path, Collection<String> pending) {
+        File[] fileArr = dir.listFiles();
+        Set<String> names = new LinkedHashSet<>();
+        if (fileArr != null) {
+            for (File child : fileArr) {
+                if (!child.getName().equals(GIT_DIR)) {
+                    names.add(child.getName());
+                    if (!nodes.containsKey(childOf(path, child.getName()))) {
+                        node.getChildren().add(scan(child, childOf(path, child.getName())));
+                    }
+                }
+            }
+        }
+        // removeNode()会修改子节点列表
+        for (TreeItemVO child : new ArrayList<>(node.getChildren())) {
+            if (!names.contains(child.getFileName())) {
+                String childPath = childOf(path, child.getFileName());
+                removeNode(childPath);
+                addPending(pending, childPath);
+            }
+        }
+    }
+
+    /**
+     * 保证目录节点存在(如多级目录创建)，返回该目录节点
+     */
+    private TreeItemVO ensureDir(String path) {
+        TreeItemVO node = nodes.get(path);
+        if (node != null) {
+            return node;
+        }
+        TreeItemVO parent = ensureDir(parentOf(path));
+        File dir = new File(workTree, path);
+        // 只包含尚未检出文件的目录在磁盘上不存在
+        node = dir.isDirectory() ? scan(dir, path) : newNode(path, "dir");
+        parent.getChildren().add(node);
+        return node;
+    }
+
+    private TreeItemVO newNode(String path, String type) {
+        TreeItemVO treeItemVO = new TreeItemVO();
+        File file = new File(workTree, path);
+        treeItemVO.setFileName(file.getName());
+        treeItemVO.setFilePath(file.getAbsolutePath());
+        treeItemVO.setType(type);
+        treeItemVO.setChildren(new ArrayList<TreeItemVO>());
+        nodes.put(path, treeItemVO);
+        return treeItemVO;
+    }
+
+    private void removeNode(String path) {
+        TreeItemVO node = nodes.remove(path);
+        if (node == null || path.isEmpty()) {
+            return;
+        }
+        TreeItemVO parent = nodes.get(parentOf(path));
+        if (parent != null) {
+            parent.getChildren().remove(node);
+        }
+        // 删除子孙节点的索引
+        String prefix = path + "/";
+        nodes.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private void applyStatus(TreeItemVO node, String path, Map<String, String> statusMap) {
+        if ("file".equals(node.getType())) {
+            node.setStatus(statusMap.getOrDefault(path, WorkingTreeStatus.NONE));
+            return;
+        }
+        for (TreeItemVO child : node.getChildren()) {
+            applyStatus(child, childOf(path, child.getFileName()), statusMap);
+        }
+    }
+
+    private void watch(File dir, String path) {
+        WatchKey key = DirTreeWatcher.getInstance().register(dir, this, path);
+        if (key != null) {
+            watchKeys.add(key);
+        }
+    }
+
+    /**
+     * 在DirTreeWatcher的监听线程中调用：合并一个目录的同一批事件后增量刷新
+     *
+     * @param dirPath 发生变化的目录的相对路径
+     */
+    void changed(String dirPath, List<WatchEvent<?>> events) {
+        Set<String> changed = new LinkedHashSet<>();
+        Set<String> modified = new LinkedHashSet<>();
+        for (WatchEvent<?> event : events) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                log.info("目录监听事件溢出，目录树将在下次请求时重建");
+                invalidate();
+                return;
+            }
+            String name = ((Path) event.context()).toString();
+            if (dirPath.isEmpty() && name.equals(GIT_DIR)) {
+                continue;
+            }
+            String path = childOf(dirPath, name);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
+                modified.add(path);
+            } else {
+                changed.add(path);
+            }
+        }
+        for (String path : changed) {
+            refresh(path);
+        }
+        modified.removeAll(changed);
+        refreshStatus(modified);
+    }
+
+    /**
+     * 复制节点及其全部子节点，调用方需持有本对象的锁
+     */
+    private static TreeItemVO copyOf(TreeItemVO node) {
+        TreeItemVO copy = new TreeItemVO();
+        copy.setId(node.getId());
+        copy.setFileName(node.getFileName());
+        copy.setFilePath(node.getFilePath());
+        copy.setRelativePath(node.getRelativePath());
+        copy.setType(node.getType());
+        copy.setStatus(node.getStatus());
+        List<TreeItemVO> children = new ArrayList<>(node.getChildren().size());
+        for (TreeItemVO child : node.getChildren()) {
+            children.add(copyOf(child));
+        }
+        copy.setChildren(children);
+        return copy;
+    }
+
+    private static String parentOf(String path) {
+        int index = path.lastIndexOf('/');
+        return index < 0 ? "" : path.substring(0, index);
+    }
+
+    private static String childOf(String path, String name) {
+        return path.isEmpty() ? name : path + "/" + name;
+    }
+}
@@ -0,0 +1,126 @@
+package service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @ClassName DirTreeWatcher
+ * @Description 各仓库目录树共用的目录监听：一个WatchService和一个监听线程，事件按目录交给注册它的DirTreeCache处理
+ * @Author jinym
+ **/
+public class DirTreeWatcher {
+
+    private static final DirTreeWatcher INSTANCE = new DirTreeWatcher();
+
+    private Logger log = LoggerFactory.getLogger(DirTreeWatcher.class);
+
+    // 已注册的目录 -> 所属目录树和相对路径
+    private final Map<WatchKey, Target> targets = new ConcurrentHashMap<>();
+
+    private WatchService watchService = null;
+
+    private boolean started = false;
+
+    private DirTreeWatcher() {
+    }
+
+    public static DirTreeWatcher getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 监听目录下的新增、删除和修改，第一次注册时启动监听线程
+     *
+     * @param path 目录相对git库的路径
+     * @return 注册失败时返回null，目录树只随服务自身的写操作更新
+     */
+    synchronized WatchKey register(File dir, DirTreeCache cache, String path) {
+        if (!started) {
+            started = true;
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+            } catch (IOException e) {
+                log.error("WatchService创建失败，目录树只随服务自身的写操作更新：" + e.getMessage());
+                return null;
+            }
+            Thread thread = new Thread(this::processEvents, "jgit-tree-watcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        if (watchService == null) {
+            return null;
+        }
+        try {
+            WatchKey key = dir.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            targets.put(key, new Target(cache, path));
+            return key;
+        } catch (IOException e) {
+            log.error("监听目录失败：" + dir + "，" + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 取消目录树注册的目录，之后不再收到这些目录的事件
+     */
+    void cancel(Collection<WatchKey> keys) {
+        for (WatchKey key : keys) {
+            targets.remove(key);
+            key.cancel();
+        }
+    }
+
+    /**
+     * 监听线程：每次取出一个目录的事件，在本线程中交给目录树增量刷新
+     */
+    private void processEvents() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Target target = targets.get(key);
+            List<WatchEvent<?>> events = key.pollEvents();
+            if (!key.reset()) {
+                // 目录已删除，由上级目录的事件更新目录树
+                targets.remove(key);
+            }
+            if (target == null || events.isEmpty()) {
+                continue;
+            }
+            try {
+                target.cache.changed(target.path, events);
+            } catch (RuntimeException e) {
+                log.error("目录树增量刷新失败：" + target.path + "，" + e.getMessage(), e);
+                target.cache.invalidate();
+            }
+        }
+    }
+
+    private static class Target {
+
+        private final DirTreeCache cache;
+
+        private final String path;
+
+        private Target(DirTreeCache cache, String path) {
+            this.cache = cache;
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package service.impl;
+
+import entity.RestoreResult;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.util.RawParseUtils;
+import utils.PathUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * @ClassName FileRestorer
+ * @Description 恢复历史版本：一次遍历目标版本的tree和暂存区，暂存区条目和文件元数据已与目标一致的文件跳过，
+ *              其余文件分段在读取线程池中并行写出，目标版本中不存在的已跟踪文件删除，最后一次更新暂存区
+ * @Author jinym
+ **/
+public class FileRestorer {
+
+    // 每个写出任务至少包含的文件数，文件少时不拆分
+    private static final int MIN_FILES_PER_TASK = 32;
+
+    private final Repository repository;
+
+    public FileRestorer(Repository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * 将文件和目录恢复为指定版本的内容，调用方需持有仓库写锁
+     *
+     * @param commitId      版本号
+     * @param relativePaths 相对git库的文件或目录路径，为空或包含""时恢复整个工作区
+     * @return 恢复结果，不包含提交结果
+     */
+    public RestoreResult restore(ObjectId commitId, Collection<String> relativePaths) throws IOException {
+        Set<String> paths = normalize(relativePaths);
+        List<Target> targets = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        int unchanged = 0;
+        DirCache index = repository.lockDirCache();
+        try {
+            try (RevWalk walk = new RevWalk(repository); TreeWalk treeWalk = new TreeWalk(walk.getObjectReader())) {
+                treeWalk.addTree(walk.parseCommit(commitId).getTree());
+                treeWalk.addTree(new DirCacheIterator(index));
+                if (!paths.contains("")) {
+                    treeWalk.setFilter(PathFilterGroup.createFromStrings(paths));
+                }
+                treeWalk.setRecursive(true);
+                long entries = 0;
+                while (treeWalk.next()) {
+                    entries++;
+                    String path = treeWalk.getPathString();
+                    int mode = treeWalk.getRawMode(0);
+                    DirCacheIterator indexEntry = treeWalk.getTree(1, DirCacheIterator.class);
+                    if (mode == FileMode.TYPE_MISSING) {
+                        deleted.add(path);
+                        continue;
+                    }
+                    if (FileMode.GITLINK.equals(mode)) {
+                        continue;
+                    }
+                    ObjectId blobId = treeWalk.getObjectId(0);
+                    File file = new File(repository.getWorkTree(), path);
+                    boolean indexed = indexEntry != null && indexEntry.getEntryRawMode() == mode
+                            && indexEntry.getEntryObjectId().equals(blobId);
+                    if (indexed && WorkingTreeStatus.isClean(indexEntry.getDirCacheEntry(), file)) {
+                        unchanged++;
+                        continue;
+                    }
+                    // 暂存区与目标一致但元数据不可信(刚写入被标记等)时，写出前先比较文件内容
+                    targets.add(new Target(path, blobId, FileMode.fromBits(mode), file, indexed));
+                }
+                GitMetrics.treeEntriesWalked(entries);
+            }
+
+            // 先删除，文件与目录互换的路径才能写出
+            for (String path : deleted) {
+                delete(new File(repository.getWorkTree(), path));
+            }
+            List<DirCacheEntry> written = write(targets);
+
+            DirCacheEditor editor = index.editor();
+            for (DirCacheEntry entry : written) {
+                editor.add(new DirCacheEditor.PathEdit(entry) {
+                    @Override
+                    public void apply(DirCacheEntry ent) {
+                        ent.copyMetaData(entry);
+                        ent.setObjectId(entry.getObjectId());
+                    }
+                });
+            }
+            for (String path : deleted) {
+                editor.add(new DirCacheEditor.DeletePath(path));
+            }
+            editor.finish();
+            if (!written.isEmpty() || !deleted.isEmpty()) {
+                // 刚写出的文件与暂存区修改时间相同时由DirCache标记，下次比较时读取内容
+                index.write();
+                index.commit();
+            }
+        } finally {
+            index.unlock();
+        }
+        List<String> files = new ArrayList<>(targets.size());
+        for (Target target : targets) {
+            if (target.written) {
+                files.add(target.path);
+            } else {
+                unchanged++;
+            }
+        }
+        return new RestoreResult(commitId.name(), files, deleted, unchanged, null);
+    }
+
+    /**
+     * 按tree的顺序分段，每段一个任务、一个ObjectReader，相邻的文件在pack中通常也相邻
+     *
+     * @return 与targets顺序一致的新暂存区条目，内容未变化的文件只更新元数据
+     */
+    private List<DirCacheEntry> write(List<Target> targets) throws IOException {
+        ForkJoinPool pool = GitExecutors.readPool();
+        int tasks = Math.max(1, Math.min(pool.getParallelism(), targets.size() / MIN_FILES_PER_TASK));
+        int size = (targets.size() + tasks - 1) / tasks;
+        List<Future<List<DirCacheEntry>>> futures = new ArrayList<>();
+        for (int from = 0; from < targets.size(); from += size) {
+            List<Target> part = targets.subList(from, Math.min(targets.size(), from + size));
+            futures.add(pool.submit(() -> writePart(part)));
+        }
+        List<DirCacheEntry> entries = new ArrayList<>(targets.size());
+        IOException error = null;
+        // 出错时也等待全部任务结束，不在释放暂存区锁之后继续写工作区
+        for (Future<List<DirCacheEntry>> future : futures) {
+            try {
+                entries.addAll(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = new InterruptedIOException("恢复历史版本被中断");
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        return entries;
+    }
+
+    private List<DirCacheEntry> writePart(List<Target> part) throws IOException {
+        List<DirCacheEntry> entries = new ArrayList<>(part.size());
+        long bytes = 0;
+        ObjectInserter.Formatter formatter = new ObjectInserter.Formatter();
+        try (ObjectReader reader = repository.newObjectReader()) {
+            for (Target target : part) {
+                ObjectLoader loader = reader.open(target.blobId, Constants.OBJ_BLOB);
+                bytes += loader.getSize();
+                if (target.indexed && sameContent(target, loader.getSize(), formatter)) {
+                    entries.add(entry(target));
+                    continue;
+                }
+                File parent = target.file.getParentFile();
+                // 其他任务可能同时创建同一目录，以结果判断
+                if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+                    throw new IOException("创建目录失败：" + parent);
+                }
+                if (target.mode == FileMode.SYMLINK) {
+                    Files.deleteIfExists(target.file.toPath());
+                    repository.getFS().createSymLink(target.file, RawParseUtils.decode(loader.getCachedBytes()));
+                } else {
+                    try (OutputStream out = new FileOutputStream(target.file)) {
+                        loader.copyTo(out);
+                    }
+                    repository.getFS().setExecute(target.file, target.mode == FileMode.EXECUTABLE_FILE);
+                }
+                target.written = true;
+                entries.add(entry(target));
+            }
+        }
+        GitMetrics.objectsLoaded(part.size(), bytes);
+        return entries;
+    }
+
+    /**
+     * 工作区的普通文件内容与目标blob相同
+     */
+    private static boolean sameContent(Target target, long size, ObjectInserter.Formatter formatter) throws IOException {
+        if (target.mode == FileMode.SYMLINK || !target.file.isFile() || target.file.length() != size) {
+            return false;
+        }
+        try (InputStream in = new FileInputStream(target.file)) {
+            return formatter.idFor(Constants.OBJ_BLOB, size, in).equals(target.blobId);
+        }
+    }
+
+    private static DirCacheEntry entry(Target target) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(target.file.toPath(),
+                BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        DirCacheEntry entry = new DirCacheEntry(target.path);
+        entry.setObjectId(target.blobId);
+        entry.setFileMode(target.mode);
+        entry.setLength(attributes.size());
+        entry.setLastModified(attributes.lastModifiedTime().toInstant());
+        return entry;
+    }
+
+    /**
+     * 删除文件及因此变为空的上级目录
+     */
+    private void delete(File file) throws IOException {
+        Files.deleteIfExists(file.toPath());
+        File workTree = repository.getWorkTree();
+        File dir = file.getParentFile();
+        while (dir != null && !dir.equals(workTree) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /**
+     * 规范化各路径，为空时返回只包含""(整个工作区)的集合
+     */
+    private static Set<String> normalize(Collection<String> relativePaths) {
+        Set<String> paths = new LinkedHashSet<>();
+        if (relativePaths != null) {
+            for (String relativePath : relativePaths) {
+                paths.add(PathUtils.normalize(relativePath));
+            }
+        }
+        if (paths.isEmpty()) {
+            paths.add("");
+        }
+        return paths;
+    }
+
+    private static class Target {
+        final String path;
+        final ObjectId blobId;
+        final FileMode mode;
+        final File file;
+        // 暂存区条目已是目标blob
+        final boolean indexed;
+        // 由写出任务设置，任务完成后读取
+        boolean written = false;
+
+        Target(String path, ObjectId blobId, FileMode mode, File file, boolean indexed) {
+            this.path = path;
+            this.blobId = blobId;
+            this.mode = mode;
+            this.file = file;
+            this.indexed = indexed;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package service.impl;
+
+import utils.PropertiesUtils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @ClassName GitExecutors
+ * @Description 服务内共用的有界线程池，线程数由gitlab.properties配置
+ * @Author jinym
+ **/
+public class GitExecutors {
+
+    private static volatile ForkJoinPool readPool = null;
+
+    private static volatile ExecutorService background = null;
+
+    private static volatile ExecutorService diffPool = null;
+
+    private static volatile ExecutorService asyncPool = null;
+
+    private static volatile ExecutorService zipPool = null;
+
+    private static volatile ScheduledExecutorService scheduler = null;
+
+    private static volatile ExecutorService commitPool = null;
+
+    private static volatile ExecutorService syncPool = null;
+
+    private GitExecutors() {
+    }
+
+    /**
+     * 批量读取使用的fork-join线程池，按版本号分组并行
+     */
+    public static ForkJoinPool readPool() {
+        if (readPool == null) {
+            synchronized (GitExecutors.class) {
+                if (readPool == null) {
+                    readPool = new ForkJoinPool(PropertiesUtils.getInt("gitlab.readThreads",
+                            Runtime.getRuntime().availableProcessors()));
+                }
+            }
+        }
+        return readPool;
+    }
+
+    /**
+     * 后台维护任务(索引更新等)使用的单线程池
+     */
+    public static ExecutorService background() {
+        if (background == null) {
+            synchronized (GitExecutors.class) {
+                if (background == null) {
+                    background = Executors.newSingleThreadExecutor(daemonThreads("jgit-background"));
+                }
+            }
+        }
+        return background;
+    }
+
+    /**
+     * 文件内容对比使用的有界线程池，队列满时由调用线程执行
+     */
+    public static ExecutorService diffPool() {
+        if (diffPool == null) {
+            synchronized (GitExecutors.class) {
+                if (diffPool == null) {
+                    int threads = PropertiesUtils.getInt("gitlab.diffThreads", Runtime.getRuntime().availableProcessors());
+                    diffPool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(1024), daemonThreads("jgit-diff"),
+                            new ThreadPoolExecutor.CallerRunsPolicy());
+                }
+            }
+        }
+        return diffPool;
+    }
+
+    /**
+     * zip打包时压缩文件使用的有界线程池，队列满时由调用线程执行
+     */
+    public static ExecutorService zipPool() {
+        if (zipPool == null) {
+            synchronized (GitExecutors.class) {
+                if (zipPool == null) {
+                    int threads = PropertiesUtils.getInt("gitlab.zipThreads", Runtime.getRuntime().availableProcessors());
+                    zipPool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(1024), daemonThreads("jgit-zip"),
+                            new ThreadPoolExecutor.CallerRunsPolicy());
+                }
+            }
+        }
+        return zipPool;
+    }
+
+    /**
+     * 定时任务(提交的时间窗口、空闲仓库关闭等)使用的单线程调度器
+     */
+    public static ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            synchronized (GitExecutors.class) {
+                if (scheduler == null) {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("jgit-scheduler"));
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * 各仓库提交队列共用的有界线程池；同一仓库同时只有一个提交任务，任务在队列中等待，不由调用线程执行
+     */
+    public static ExecutorService commitPool() {
+        if (commitPool == null) {
+            synchronized (GitExecutors.class) {
+                if (commitPool == null) {
+                    int threads = PropertiesUtils.getInt("gitlab.commitThreads", Runtime.getRuntime().availableProcessors());
+                    commitPool = fixedThreads(threads, "jgit-commit");
+                }
+            }
+        }
+        return commitPool;
+    }
+
+    /**
+     * 各仓库后台同步(fetch)和推送共用的有界线程池，网络等待不占用异步接口的线程；
+     * 同一仓库同时只有一个同步任务、一个推送任务，任务在队列中等待，不由调用线程执行
+     */
+    public static ExecutorService syncPool() {
+        if (syncPool == null) {
+            synchronized (GitExecutors.class) {
+                if (syncPool == null) {
+                    syncPool = fixedThreads(PropertiesUtils.getInt("gitlab.syncThreads", 4), "jgit-sync");
+                }
+            }
+        }
+        return syncPool;
+    }
+
+    /**
+     * 异步接口使用的线程池：运行在Java 21及以上时每个任务一个虚拟线程，
+     * 否则为gitlab.asyncThreads个线程的有界线程池，队列满时由调用线程执行
+     */
+    public static ExecutorService asyncPool() {
+        if (asyncPool == null) {
+            synchronized (GitExecutors.class) {
+                if (asyncPool == null) {
+                    asyncPool = virtualThreads();
+                    if (asyncPool == null) {
+                        int threads = PropertiesUtils.getInt("gitlab.asyncThreads", 4 * Runtime.getRuntime().availableProcessors());
+                        asyncPool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                                new LinkedBlockingQueue<Runnable>(4096), daemonThreads("jgit-async"),
+                                new ThreadPoolExecutor.CallerRunsPolicy());
+                    }
+                }
+            }
+        }
+        return asyncPool;
+    }
+
+    /**
+     * 编译目标为Java 8，通过反射使用虚拟线程
+     */
+    private static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService fixedThreads(int threads, String name) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), daemonThreads(name));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
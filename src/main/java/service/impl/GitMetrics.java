@@ -0,0 +1,128 @@
+package service.impl;
+
+import org.eclipse.jgit.storage.file.WindowCacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @ClassName GitMetrics
+ * @Description 对象库读取统计：pack读取量来自JGit的WindowCache，读取的对象数、字节数和tree条目数由各读取循环结束后累加；
+ *              以jgit:type=Storage发布到JMX，同时提供各统计对象的JMX注册
+ * @Author jinym
+ **/
+public class GitMetrics implements StorageMetricsMXBean {
+
+    public static final String DOMAIN = "jgit";
+
+    private static final Logger log = LoggerFactory.getLogger(GitMetrics.class);
+
+    private static final GitMetrics INSTANCE = new GitMetrics();
+
+    static {
+        register(INSTANCE, DOMAIN + ":type=Storage");
+    }
+
+    private final LongAdder objectsInflated = new LongAdder();
+
+    private final LongAdder bytesInflated = new LongAdder();
+
+    private final LongAdder treeEntriesWalked = new LongAdder();
+
+    private GitMetrics() {
+    }
+
+    public static GitMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 记录读取的对象
+     *
+     * @param count 对象数
+     * @param bytes 对象字节数
+     */
+    public static void objectsLoaded(long count, long bytes) {
+        INSTANCE.objectsInflated.add(count);
+        INSTANCE.bytesInflated.add(bytes);
+    }
+
+    /**
+     * 记录一次tree遍历经过的条目数
+     */
+    public static void treeEntriesWalked(long count) {
+        INSTANCE.treeEntriesWalked.add(count);
+    }
+
+    /**
+     * 注册到平台MBeanServer，同名的已注册对象会被替换；失败只记录日志
+     */
+    public static void register(Object mbean, String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(mbean, objectName);
+        } catch (Exception e) {
+            log.error("注册JMX出错：" + name + "，" + e.getMessage());
+        }
+    }
+
+    public static void unregister(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (Exception e) {
+            log.error("注销JMX出错：" + name + "，" + e.getMessage());
+        }
+    }
+
+    @Override
+    public long getPackBytesRead() {
+        return WindowCacheStats.getStats().getLoadSuccessCount() * RepositoryManager.getInstance().packedGitWindowSize();
+    }
+
+    @Override
+    public long getPackWindowHits() {
+        return WindowCacheStats.getStats().getHitCount();
+    }
+
+    @Override
+    public long getPackWindowMisses() {
+        return WindowCacheStats.getStats().getMissCount();
+    }
+
+    @Override
+    public long getObjectsInflated() {
+        return objectsInflated.sum();
+    }
+
+    @Override
+    public long getBytesInflated() {
+        return bytesInflated.sum();
+    }
+
+    @Override
+    public long getTreeEntriesWalked() {
+        return treeEntriesWalked.sum();
+    }
+
+    @Override
+    public int getOpenRepositories() {
+        return RepositoryManager.getInstance().openCount();
+    }
+
+    @Override
+    public long getRepositoryBytes() {
+        return RepositoryManager.getInstance().estimatedBytes();
+    }
+}
@@ -0,0 +1,19 @@
+package service.impl;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * @ClassName HeadListener
+ * @Description 后台同步使本地HEAD变化时的回调，缓存的视图(目录树、文件历史索引等)据此增量更新
+ * @Author jinym
+ **/
+public interface HeadListener {
+
+    /**
+     * @param repository 仓库，回调结束后由调用方关闭
+     * @param oldHead    变化前的HEAD，空仓库时为null
+     * @param newHead    变化后的HEAD
+     */
+    void headChanged(Repository repository, ObjectId oldHead, ObjectId newHead) throws Exception;
+}
@@ -0,0 +1,243 @@
+package service.impl;
+
+import entity.HisFile;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.ByteBufferInputStream;
+import utils.PathUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @ClassName HisFileExporter
+ * @Description 历史版本文件流式导出：小文件经BlobCache读取，大文件直接从ObjectLoader写入调用方的输出流，不在内存中保留整个文件
+ * @Author jinym
+ **/
+public class HisFileExporter implements AutoCloseable {
+
+    private Logger log = LoggerFactory.getLogger(HisFileExporter.class);
+
+    private final Repository repository;
+
+    private final RevWalk walk;
+
+    public HisFileExporter(Repository repository) {
+        this.repository = repository;
+        this.walk = new RevWalk(repository);
+    }
+
+    /**
+     * 将一个历史版本文件写入输出流
+     *
+     * @param commitId     版本号
+     * @param relativePath 相对git库的文件路径
+     * @param out          输出流，由调用方关闭
+     */
+    public void write(String commitId, String relativePath, OutputStream out) throws IOException {
+        copy(locate(commitId, relativePath), out);
+    }
+
+    /**
+     * 将一个历史版本文件写入通道，已缓存的内容直接从堆外内存写出
+     *
+     * @param channel 输出通道，由调用方关闭
+     */
+    public void write(String commitId, String relativePath, WritableByteChannel channel) throws IOException {
+        Blob blob = blob(locate(commitId, relativePath));
+        if (blob.cached == null) {
+            blob.loader.copyTo(Channels.newOutputStream(channel));
+            return;
+        }
+        while (blob.cached.hasRemaining()) {
+            channel.write(blob.cached);
+        }
+    }
+
+    /**
+     * 读取一个历史版本文件，只读取可以放入BlobCache的文件，大文件不整个读入内存
+     *
+     * @return 只读内容，小文件来自BlobCache
+     * @throws IOException 超过gitlab.blobCacheMaxEntryBytes的大文件，需使用write()以流的方式读取
+     */
+    public ByteBuffer read(String commitId, String relativePath) throws IOException {
+        Blob blob = blob(locate(commitId, relativePath));
+        if (blob.cached == null) {
+            throw new IOException("文件过大，请以流的方式读取：" + relativePath + "，大小：" + blob.loader.getSize());
+        }
+        return blob.cached;
+    }
+
+    /**
+     * 将多个历史版本文件写入zip，entry名保留相对路径；
+     * 同一路径出现多次(不同版本)时，后出现的加上版本号前缀
+     *
+     * @param packager 打包方式，文件在其压缩线程中读取
+     * @param out      输出流，由调用方关闭
+     * @return 全部文件都写入时返回true，不存在的文件会被跳过
+     */
+    public boolean writeZip(String[] commitIds, String[] relativePaths, ZipPackager packager, OutputStream out)
+            throws IOException {
+        boolean complete = true;
+        Set<String> entryNames = new HashSet<>();
+        // 批量定位：每个版本只解析一次、遍历一次tree
+        for (HisFile hisFile : new BlobBatchReader(repository).resolve(commitIds, relativePaths)) {
+            if (hisFile.getError() != null) {
+                log.error(hisFile.getError());
+                complete = false;
+                continue;
+            }
+            ObjectId blobId = hisFile.getBlobId();
+            packager.add(entryName(entryNames, hisFile.getCommitId(), hisFile.getRelativePath()), () -> openStream(blobId));
+        }
+        packager.writeTo(out);
+        return complete;
+    }
+
+    /**
+     * zip中的entry名，同一路径重复时加上版本号前缀；加前缀后仍重复(同一版本的同一文件多次、
+     * 与已有路径相同)时在前缀后加序号，直到不重复
+     */
+    static String entryName(Set<String> entryNames, String commitId, String relativePath) {
+        String name = PathUtils.normalize(relativePath);
+        if (entryNames.add(name)) {
+            return name;
+        }
+        String prefix = commitId.length() > 7 ? commitId.substring(0, 7) : commitId;
+        String unique = prefix + "/" + name;
+        for (int i = 2; !entryNames.add(unique); i++) {
+            unique = prefix + "-" + i + "/" + name;
+        }
+        return unique;
+    }
+
+    /**
+     * 写出blob内容，大文件以流的方式读取
+     */
+    private void copy(ObjectId blobId, OutputStream out) throws IOException {
+        Blob blob = blob(blobId);
+        ByteBuffer cached = blob.cached;
+        if (cached == null) {
+            blob.loader.copyTo(out);
+            return;
+        }
+        byte[] chunk = new byte[Math.min(cached.remaining(), 64 * 1024)];
+        while (cached.hasRemaining()) {
+            int n = Math.min(chunk.length, cached.remaining());
+            cached.get(chunk, 0, n);
+            out.write(chunk, 0, n);
+        }
+    }
+
+    /**
+     * 单个文件的读取经过BlobCache，再次读取的小文件放入缓存
+     *
+     * @return 小文件为只读内容；大文件为已打开的loader，调用方以流的方式读取，不再重复打开
+     */
+    private Blob blob(ObjectId blobId) throws IOException {
+        ByteBuffer cached = BlobCache.getInstance().get(blobId);
+        if (cached != null) {
+            return new Blob(cached, null);
+        }
+        ObjectLoader loader = open(blobId);
+        cached = BlobCache.getInstance().load(blobId, loader);
+        return new Blob(cached, cached == null ? loader : null);
+    }
+
+    /**
+     * 在压缩线程中打开blob，每次使用独立的ObjectReader，流关闭时一起关闭；
+     * 批量导出只使用已缓存的内容，不放入BlobCache，避免一次导出挤掉常用文件
+     */
+    InputStream openStream(ObjectId blobId) throws IOException {
+        ByteBuffer cached = BlobCache.getInstance().get(blobId);
+        if (cached != null) {
+            // 直接读取缓存的堆外内容，get()返回的是各调用方独立的副本
+            return new ByteBufferInputStream(cached);
+        }
+        ObjectReader reader = repository.newObjectReader();
+        try {
+            ObjectLoader loader = reader.open(blobId, Constants.OBJ_BLOB);
+            GitMetrics.objectsLoaded(1, loader.getSize());
+            if (!loader.isLarge()) {
+                return new ByteArrayInputStream(loader.getCachedBytes());
+            }
+            ObjectReader streamReader = reader;
+            reader = null;
+            return new FilterInputStream(loader.openStream()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        streamReader.close();
+                    }
+                }
+            };
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    private ObjectLoader open(ObjectId blobId) throws IOException {
+        ObjectLoader loader = walk.getObjectReader().open(blobId, Constants.OBJ_BLOB);
+        GitMetrics.objectsLoaded(1, loader.getSize());
+        return loader;
+    }
+
+    /**
+     * 定位历史版本文件
+     */
+    private ObjectId locate(String commitId, String relativePath) throws IOException {
+        ObjectId objId = repository.resolve(commitId);
+        if (objId == null) {
+            throw new FileNotFoundException("版本号不存在：" + commitId);
+        }
+        RevTree tree = walk.parseCommit(objId).getTree();
+        ObjectReader reader = walk.getObjectReader();
+        try (TreeWalk treeWalk = TreeWalk.forPath(reader, relativePath, tree)) {
+            if (treeWalk == null || treeWalk.isSubtree()) {
+                throw new FileNotFoundException("版本号：" + commitId + "在路径" + relativePath + "下无该文件");
+            }
+            return treeWalk.getObjectId(0);
+        }
+    }
+
+    @Override
+    public void close() {
+        walk.close();
+    }
+
+    /**
+     * 单个文件的读取结果：cached和loader有且只有一个不为null
+     */
+    private static class Blob {
+
+        private final ByteBuffer cached;
+
+        private final ObjectLoader loader;
+
+        private Blob(ByteBuffer cached, ObjectLoader loader) {
+            this.cached = cached;
+            this.loader = loader;
+        }
+    }
+}
@@ -1,26 +1,36 @@
 package service.impl;
 
+import entity.ArchiveFormat;
+import entity.CacheStats;
+import entity.CloneOptions;
+import entity.CommitField;
+import entity.CommitPage;
+import entity.CommitResult;
+import entity.DiffOptions;
+import entity.DiffSummary;
+import entity.FileDiff;
+import entity.HisFile;
+import entity.HunkRange;
+import entity.RepositoryConfig;
+import entity.RestoreResult;
+import entity.SyncStatus;
 import entity.TreeItemVO;
-import org.eclipse.jgit.api.AddCommand;
-import org.eclipse.jgit.api.CommitCommand;
+import org.eclipse.jgit.api.CloneCommand;
 import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.PullResult;
+import org.eclipse.jgit.api.LogCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.diff.*;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectLoader;
-import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.patch.FileHeader;
-import org.eclipse.jgit.patch.HunkHeader;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
-import org.eclipse.jgit.treewalk.AbstractTreeIterator;
-import org.eclipse.jgit.treewalk.CanonicalTreeParser;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.multipart.MultipartFile;
@@ -29,8 +39,14 @@ import utils.FileUtils;
 import utils.PropertiesUtils;
 
 import java.io.*;
-import java.text.SimpleDateFormat;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -42,41 +58,119 @@ import java.util.zip.ZipOutputStream;
 public class JGitServiceImpl implements JGitService {
 
     // 代码分支
-    private final String branch = PropertiesUtils.getProperty("gitlab.branch");
+    private final String branch;
 
     // git url
-    private final String url = PropertiesUtils.getProperty("gitlab.url");
+    private final String url;
 
     // 本地git路径
-    private final String localPath = PropertiesUtils.getProperty("gitlab.localPath");
-
-    // 账户名
-    private final String userName = PropertiesUtils.getProperty("gitlab.userName");
-
-    // 账户密码
-    private final String password = PropertiesUtils.getProperty("gitlab.password");
+    private final String localPath;
 
     // 账户
-    private UsernamePasswordCredentialsProvider usernamePasswordCredentialsProvider = new
-            UsernamePasswordCredentialsProvider(userName, password);
+    private final UsernamePasswordCredentialsProvider usernamePasswordCredentialsProvider;
+
+    // pull后变化文件超过该数量时直接重建目录树
+    private static final int TREE_REFRESH_LIMIT = 1000;
 
     private Logger log = LoggerFactory.getLogger(JGitServiceImpl.class);
 
-    private Git git = null;
-    private Repository repository = null;
-    private SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    // 常驻的文件目录树，增量维护
+    private final DirTreeCache treeCache;
+
+    // 文件历史索引，HEAD变化后后台增量更新
+    private final PathHistoryIndex pathIndex;
+
+    // 版本对比结果缓存，tree id不可变，只淘汰不失效
+    private final DiffCache diffCache = new DiffCache();
+
+    // 跟随重命名的文件历史中识别的重命名
+    private final RenameCache renameCache = new RenameCache();
+
+    // 合并提交队列，推送异步进行
+    private final CommitQueue commitQueue;
+
+    // 后台同步远程分支
+    private final SyncScheduler syncScheduler;
+
+    // 工作区是否还有延迟检出的文件，null为未检查
+    private volatile Boolean lazyWorkTree = null;
+
+    /**
+     * 使用gitlab.properties中gitlab.url、gitlab.localPath等配置的默认仓库
+     */
+    public JGitServiceImpl() {
+        this(RepositoryRegistry.defaultConfig());
+    }
+
+    /**
+     * 指定仓库，多仓库时由RepositoryRegistry按仓库名创建
+     */
+    public JGitServiceImpl(RepositoryConfig config) {
+        this.branch = config.getBranch();
+        this.url = config.getUrl();
+        this.localPath = config.getLocalPath();
+        this.usernamePasswordCredentialsProvider = new UsernamePasswordCredentialsProvider(
+                config.getUserName(), config.getPassword());
+        this.treeCache = new DirTreeCache(localPath, this::status, this::pendingPaths);
+        this.pathIndex = new PathHistoryIndex(this::openRepository);
+        this.commitQueue = new CommitQueue(this::openRepository, usernamePasswordCredentialsProvider,
+                files -> {
+                    treeCache.refreshStatus(files);
+                    pathIndex.scheduleUpdate();
+                });
+        this.syncScheduler = new SyncScheduler(this::openRepository, localPath, branch, usernamePasswordCredentialsProvider,
+                config.getSyncIntervalMillis());
+        syncScheduler.addListener((repository, oldHead, newHead) -> {
+            refreshTree(repository, oldHead, newHead);
+            pathIndex.scheduleUpdate();
+        });
+        // 之前推送失败的提交在同步后重新推送，推送被拒绝时立即同步一次以更新分叉状态
+        syncScheduler.setPusher(commitQueue::requestPush);
+        commitQueue.setOnRejected(syncScheduler::syncSoon);
+        // 尚未clone时在gitClone()之后启动
+        if (new File(localPath, Constants.DOT_GIT).exists()) {
+            syncScheduler.start();
+        }
+    }
 
     @Override
     public boolean gitClone() {
-        try {
-            Git.cloneRepository()
-                    .setURI(url)
-                    .setDirectory(new File(localPath))
-                    .setCredentialsProvider(usernamePasswordCredentialsProvider)
-                    .setBranch(branch)
-                    .call();
-            log.info("本地路径：" + localPath + "，git初始化成功");
-        } catch (GitAPIException e) {
+        CloneOptions options = new CloneOptions();
+        options.setSingleBranch(PropertiesUtils.getBoolean("gitlab.cloneSingleBranch", true));
+        options.setNoCheckout(PropertiesUtils.getBoolean("gitlab.cloneNoCheckout", false));
+        for (String path : PropertiesUtils.getProperty("gitlab.clonePaths", "").split(",")) {
+            if (!path.trim().isEmpty()) {
+                options.getPaths().add(path.trim());
+            }
+        }
+        return gitClone(options);
+    }
+
+    @Override
+    public boolean gitClone(CloneOptions options) {
+        long start = System.currentTimeMillis();
+        CloneCommand clone = Git.cloneRepository()
+                .setURI(url)
+                .setDirectory(new File(localPath))
+                .setCredentialsProvider(usernamePasswordCredentialsProvider)
+                .setBranch(branch)
+                .setNoCheckout(options.isNoCheckout());
+        if (options.isSingleBranch()) {
+            clone.setCloneAllBranches(false)
+                    .setBranchesToClone(Collections.singletonList(Constants.R_HEADS + branch));
+        }
+        try (Git git = clone.call()) {
+            if (options.isNoCheckout()) {
+                LazyWorkTree.createBranch(git.getRepository(), branch);
+                LazyWorkTree.initIndex(git.getRepository());
+                if (!options.getPaths().isEmpty()) {
+                    LazyWorkTree.materialize(git.getRepository(), options.getPaths());
+                }
+                lazyWorkTree = true;
+            }
+            log.info("本地路径：" + localPath + "，git初始化成功，耗时：" + (System.currentTimeMillis() - start) + "ms");
+            syncScheduler.start();
+        } catch (GitAPIException | IOException e) {
             log.error("git初始化失败：" + e.getMessage());
             e.printStackTrace();
             return false;
@@ -84,117 +178,196 @@ public class JGitServiceImpl implements JGitService {
         return true;
     }
 
-    private void init() {
+    /**
+     * 延迟检出的工作区中，写出首次访问的文件；工作区已全部检出后不再检查
+     */
+    private void materialize(Repository repository, Collection<String> relativePaths, boolean writeMissing) throws IOException {
+        if (Boolean.FALSE.equals(lazyWorkTree)) {
+            return;
+        }
+        Lock lock = RepositoryManager.getInstance().writeLock(localPath);
+        lock.lock();
         try {
-            git = Git.open(new File(localPath));
-            repository = git.getRepository();
-        } catch (IOException e) {
-            e.printStackTrace();
+            if (lazyWorkTree == null || lazyWorkTree) {
+                lazyWorkTree = LazyWorkTree.isLazy(repository);
+            }
+            if (lazyWorkTree) {
+                int written = LazyWorkTree.materialize(repository, relativePaths, writeMissing);
+                if (written > 0) {
+                    log.info("延迟检出文件：" + written + "个");
+                }
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
+    /**
+     * 获取共享的本地仓库，用完需close()归还
+     */
+    private Repository openRepository() throws IOException {
+        return RepositoryManager.getInstance().acquire(localPath);
+    }
+
+    @Override
+    public void close() {
+        syncScheduler.close();
+        commitQueue.close();
+        treeCache.close();
+        RepositoryManager.getInstance().release(localPath);
+    }
+
     @Override
     public boolean pullBranchToLocal(){
-        init();
-        boolean resultFlag = false;
-        try {
-//            git = new Git(new FileRepository(localPath + "/.git"));
-//            git.checkout().setCreateBranch(false).setName(branch).setUpstreamMode(CreateBranchCommand.SetupUpstreamMode.TRACK).call();
-            PullResult call = git.pull().setRemoteBranchName(branch).setCredentialsProvider(usernamePasswordCredentialsProvider).call();
-            boolean successful = call.isSuccessful();
-            resultFlag = true;
-            log.info("git pull success");
-        } catch (Exception e) {
-            e.printStackTrace();
+        // 后台已定时同步，这里立即同步一次
+        SyncStatus status = syncScheduler.syncNow();
+        if (status.getLastError() != null || status.getBehind() > 0) {
+            String reason = status.getLastError();
+            if (status.isDiverged()) {
+                reason = "本地有未推送的提交且远程分支有新提交，需要合并";
+            } else if (status.isDirty()) {
+                reason = "工作区有未提交的修改";
+            }
+            log.error("git pull 未完成：" + reason);
+            return false;
         }
-        return resultFlag;
+        log.info("git pull success");
+        return true;
+    }
+
+    @Override
+    public SyncStatus getSyncStatus() {
+        return syncScheduler.getStatus();
     }
 
     @Override
     public String commitToGitRepository(String relativePath,String msg){
-        init();
         try {
-            List<String> paths = new ArrayList<>();
-            paths.add(relativePath);
-            //判断是否有被修改过的文件
-            List<DiffEntry> diffEntries = git.diff()
-                    .setPathFilter(PathFilterGroup.createFromStrings(paths))
-                    .setShowNameAndStatusOnly(true).call();
-            if (diffEntries == null || diffEntries.size() == 0) {
-                log.error("提交的文件内容都没有被修改，不能提交");
+            // 只等待提交完成，推送在后台进行
+            CommitResult result = commitAsync(relativePath, msg).get();
+            // TODO 将信息保存到数据库
+            return result.getCommitId();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("git 提交被中断");
+        } catch (Exception e) {
+            log.error("git 提交出错：" + e.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public CompletableFuture<CommitResult> commitAsync(String relativePath, String msg) {
+        return commitQueue.submit(relativePath, msg);
+    }
+
+    @Override
+    public RestoreResult restore(String commitId, Collection<String> relativePaths, String msg) {
+        long start = System.currentTimeMillis();
+        RestoreResult result;
+        Lock lock = RepositoryManager.getInstance().writeLock(localPath);
+        lock.lock();
+        try (Repository repository = openRepository()) {
+            ObjectId id = repository.resolve(commitId);
+            if (id == null) {
+                log.error("restore()版本不存在：" + commitId);
                 return null;
             }
-            //被修改过的文件
-            List<String> updateFiles = new ArrayList<>();
-            DiffEntry.ChangeType changeType = null;
-            for (DiffEntry entry : diffEntries) {
-                changeType = entry.getChangeType();
-                switch (changeType) {
-                    case ADD:
-                        updateFiles.add(entry.getNewPath());
-                        break;
-                    case COPY:
-                        updateFiles.add(entry.getNewPath());
-                        break;
-                    case DELETE:
-                        updateFiles.add(entry.getOldPath());
-                        break;
-                    case MODIFY:
-                        updateFiles.add(entry.getOldPath());
-                        break;
-                    case RENAME:
-                        updateFiles.add(entry.getNewPath());
-                        break;
-                }
-            }
-            //将文件提交到git仓库中，并返回本次提交的版本号
-            AddCommand addCmd = git.add();
-            for (String file : updateFiles) {
-                addCmd.addFilepattern(file);
+            result = new FileRestorer(repository).restore(id, relativePaths);
+        } catch (Exception e) {
+            log.error("restore()出错：" + e.getMessage());
+            return null;
+        } finally {
+            lock.unlock();
+        }
+        log.info("恢复到版本：" + commitId + "，写出文件：" + result.getFiles().size() + "个，删除："
+                + result.getDeleted().size() + "个，未变化：" + result.getUnchanged() + "个，耗时："
+                + (System.currentTimeMillis() - start) + "ms");
+        if (result.getFiles().size() + result.getDeleted().size() > TREE_REFRESH_LIMIT) {
+            treeCache.invalidate();
+        } else {
+            for (String path : result.getFiles()) {
+                treeCache.refresh(path);
             }
-            addCmd.call();
-            log.info("git add success");
-
-            CommitCommand commitCmd = git.commit();
-            for (String file : updateFiles) {
-                commitCmd.setOnly(file);
+            for (String path : result.getDeleted()) {
+                treeCache.refresh(path);
             }
-
-            RevCommit revCommit = commitCmd.setMessage(msg).call();
-            log.info("git commit success");
-            //推送
-            git.push().setCredentialsProvider(usernamePasswordCredentialsProvider).call();
-            log.info("git push success");
-
-            // TODO 将信息保存到数据库
-
-            return revCommit.getName();
+        }
+        if (msg == null || (result.getFiles().isEmpty() && result.getDeleted().isEmpty())) {
+            return result;
+        }
+        try {
+            // 只提交本次恢复的文件，路径下其他未提交的修改保留在工作区；只等待提交完成，推送在后台进行
+            List<String> restored = new ArrayList<>(result.getFiles());
+            restored.addAll(result.getDeleted());
+            CommitResult commit = commitQueue.submit(restored, msg).get();
+            return new RestoreResult(result.getVersion(), result.getFiles(), result.getDeleted(),
+                    result.getUnchanged(), commit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("restore()提交被中断");
         } catch (Exception e) {
-            log.error("git 提交出错：" + e.getMessage());
+            log.error("restore()提交出错：" + e.getMessage());
         }
         return null;
     }
 
     @Override
     public List<Map<String, Object>> getFileVersion(String fileName, int maxCount){
-        init();
-        try {
-            Iterable<RevCommit> commits = git.log().addPath(fileName).call();
-            return getDifInfo(commits);
-        } catch (GitAPIException e) {
+        try (Repository repository = openRepository(); RevWalk walk = new RevWalk(repository)) {
+            List<ObjectId> commitIds = pathIndex.newest(repository.resolve(Constants.HEAD), fileName, maxCount);
+            if (commitIds != null) {
+                List<RevCommit> commits = new ArrayList<>(commitIds.size());
+                for (ObjectId commitId : commitIds) {
+                    commits.add(walk.parseCommit(commitId));
+                }
+                return getDifInfo(commits);
+            }
+            // 索引缺失或过期：按maxCount有限遍历
+            LogCommand logCmd = Git.wrap(repository).log().addPath(fileName);
+            if (maxCount > 0) {
+                logCmd.setMaxCount(maxCount);
+            }
+            return getDifInfo(logCmd.call());
+        } catch (GitAPIException | IOException e) {
             log.error("getFileVersion failed：" + e.getMessage());
             e.printStackTrace();
         }
         return null;
     }
 
+    @Override
+    public List<Map<String, Object>> getFileVersion(String fileName, int maxCount, boolean followRenames) {
+        if (!followRenames) {
+            return getFileVersion(fileName, maxCount);
+        }
+        try (Repository repository = openRepository()) {
+            ObjectId head = repository.resolve(Constants.HEAD);
+            if (head == null) {
+                return new ArrayList<>();
+            }
+            List<RenameFollower.Version> versions = new RenameFollower(repository, renameCache)
+                    .follow(head, fileName, maxCount);
+            List<RevCommit> commits = new ArrayList<>(versions.size());
+            for (RenameFollower.Version version : versions) {
+                commits.add(version.getCommit());
+            }
+            List<Map<String, Object>> infoList = getDifInfo(commits);
+            for (int i = 0; i < infoList.size(); i++) {
+                infoList.get(i).put("relativePath", versions.get(i).getPath());
+            }
+            return infoList;
+        } catch (IOException e) {
+            log.error("getFileVersion failed：" + e.getMessage());
+        }
+        return null;
+    }
+
     @Override
     public List<Map<String, Object>> getAllVersion(int maxCount) {
-        init();
-        try {
-            repository = git.getRepository();
+        try (Repository repository = openRepository()) {
             //获取最近提交的MAX_COUNT次记录
-            Iterable<RevCommit> commits = git.log().setMaxCount(maxCount).call();
+            Iterable<RevCommit> commits = Git.wrap(repository).log().setMaxCount(maxCount).call();
             return getDifInfo(commits);
         } catch (Exception e) {
             log.error(e.getMessage());
@@ -203,103 +376,150 @@ public class JGitServiceImpl implements JGitService {
         return null;
     }
 
+    @Override
+    public String currentVersion() {
+        try (Repository repository = openRepository()) {
+            ObjectId head = repository.resolve(Constants.HEAD);
+            return head == null ? null : head.name();
+        } catch (Exception e) {
+            log.error("currentVersion()出错：" + e.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public CommitPage getHistory(String path, String after, int limit, Set<CommitField> fields) {
+        try (Repository repository = openRepository()) {
+            return new CommitHistoryReader(repository, pathIndex).page(path, after, limit, fields);
+        } catch (Exception e) {
+            log.error("getHistory()出错：" + e.getMessage());
+        }
+        return null;
+    }
+
     @Override
     public void difVersionInfo(ObjectId treeId1,ObjectId treeId2){
-        init();
-        try {
-            AbstractTreeIterator newTree = prepareTreeParser(treeId1);
-            AbstractTreeIterator oldTree = prepareTreeParser(treeId2);
-            List<DiffEntry> diff = git.diff().setOldTree(oldTree).setNewTree(newTree).setShowNameAndStatusOnly(true).call();
-
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            DiffFormatter df = new DiffFormatter(out);
-            //设置比较器为忽略空白字符对比（Ignores all whitespace）
-            df.setDiffComparator(RawTextComparator.WS_IGNORE_ALL);
-            df.setRepository(git.getRepository());
-            log.info("------------------------------start-----------------------------");
-            //每一个diffEntry都是第个文件版本之间的变动差异
-            for (DiffEntry diffEntry : diff) {
-                //打印文件差异具体内容
-                df.format(diffEntry);
-                String diffText = out.toString("UTF-8");
-                String oldPath = diffEntry.getOldPath();
-                String newPath = diffEntry.getNewPath();
-                log.info("oldPath：" + oldPath);
-                log.info("newPath：" + newPath);
-                log.info("版本差异信息：\n" + diffText);
-                log.info("操作：" + diffEntry.getChangeType());
-                //获取文件差异位置，从而统计差异的行数，如增加行数，减少行数
-                FileHeader fileHeader = df.toFileHeader(diffEntry);
-                List<HunkHeader> hunks = (List<HunkHeader>) fileHeader.getHunks();
-                int addSize = 0;
-                int subSize = 0;
-                for (HunkHeader hunkHeader : hunks) {
-                    EditList editList = hunkHeader.toEditList();
-                    for (Edit edit : editList) {
-                        subSize += edit.getEndA() - edit.getBeginA();
-                        addSize += edit.getEndB() - edit.getBeginB();
-                    }
-                    log.info("从第" + String.valueOf(hunkHeader.getNewStartLine() + 1) + "行开始了修改");
-                    log.info("减少行数：" + subSize);
-                    log.info("增加行数：" + addSize);
-                }
-                out.reset();
-                log.info("==============版本分割================");
+        DiffSummary summary = diffSummary(treeId1, treeId2, new DiffOptions());
+        if (summary == null) {
+            return;
+        }
+        log.info("版本对比：" + treeId1.name() + " -> " + treeId2.name() + "，变化文件数：" + summary.getFiles().size()
+                + "，增加行数：" + summary.getLinesAdded() + "，减少行数：" + summary.getLinesRemoved());
+        if (!log.isDebugEnabled()) {
+            return;
+        }
+        //每一个FileDiff都是一个文件版本之间的变动差异
+        for (FileDiff fileDiff : summary.getFiles()) {
+            if (fileDiff.isBinary()) {
+                log.debug("{} {} -> {}，二进制文件{}，大小变化：{}，{} -> {}", fileDiff.getChangeType(),
+                        fileDiff.getOldPath(), fileDiff.getNewPath(), fileDiff.isOversized() ? "(超过大小阈值)" : "",
+                        fileDiff.getSizeDelta(), fileDiff.getOldId().name(), fileDiff.getNewId().name());
+                continue;
             }
-            log.info("------------------------------end-----------------------------");
+            log.debug("{} {} -> {}，增加行数：{}，减少行数：{}", fileDiff.getChangeType(),
+                    fileDiff.getOldPath(), fileDiff.getNewPath(), fileDiff.getLinesAdded(), fileDiff.getLinesRemoved());
+            for (HunkRange hunk : fileDiff.getHunks()) {
+                log.debug("从第{}行开始了修改", hunk.getNewStart());
+            }
+        }
+    }
+
+    @Override
+    public DiffSummary diffSummary(ObjectId treeId1, ObjectId treeId2, DiffOptions options) {
+        try (Repository repository = openRepository()) {
+            return new DiffEngine(repository, diffCache).summarize(treeId1, treeId2, options);
         } catch (Exception e) {
-            log.error("对比版本差异difVersionInfo()出错：" + e.getMessage());
-            e.printStackTrace();
+            log.error("对比版本差异diffSummary()出错：" + e.getMessage());
         }
+        return null;
+    }
+
+    @Override
+    public boolean writePatch(ObjectId treeId1, ObjectId treeId2, DiffOptions options, OutputStream out) {
+        try (Repository repository = openRepository()) {
+            new DiffEngine(repository).writePatch(treeId1, treeId2, options, out);
+            return true;
+        } catch (Exception e) {
+            log.error("writePatch()出错：" + e.getMessage());
+        }
+        return false;
+    }
+
+    @Override
+    public boolean exportChangeset(ObjectId treeId1, ObjectId treeId2, DiffOptions options, OutputStream out) {
+        long start = System.currentTimeMillis();
+        try (Repository repository = openRepository()) {
+            OutputStream buffered = new BufferedOutputStream(out);
+            int files = new ChangesetExporter(repository).write(treeId1, treeId2, options, new ZipPackager(), buffered);
+            buffered.flush();
+            log.info("导出变更包：" + treeId2.name() + " -> " + treeId1.name() + "，变化文件数：" + files
+                    + "，耗时：" + (System.currentTimeMillis() - start) + "ms");
+            return true;
+        } catch (Exception e) {
+            log.error("exportChangeset()出错：" + e.getMessage());
+        }
+        return false;
+    }
+
+    @Override
+    public Map<String, CacheStats> cacheStats() {
+        Map<String, CacheStats> stats = new LinkedHashMap<>();
+        stats.put("diffSummary", diffCache.summaryStats());
+        stats.put("diffFile", diffCache.fileDiffStats());
+        stats.put("blob", BlobCache.getInstance().stats());
+        stats.put("rename", renameCache.stats());
+        return stats;
     }
 
     @Override
     public String status(String relativePath) {
-        init();
-        String status = null;
-        try {
-            ArrayList<String> files = new ArrayList<>();
-            files.add(relativePath);
-            //判断是否有被修改过的文件
-            List<DiffEntry> diffEntries = git.diff()
-                    .setPathFilter(PathFilterGroup.createFromStrings(files))
-                    .setShowNameAndStatusOnly(true).call();
-            if (diffEntries == null || diffEntries.size() == 0) {
-                status = "NONE";
-            }
-            //被修改过的文件
-            DiffEntry.ChangeType changeType;
-            for (DiffEntry entry : diffEntries) {
-                changeType = entry.getChangeType();
-                switch (changeType) {
-                    case ADD:
-                        status = "ADD";
-                        break;
-                    case DELETE:
-                        status = "DELETE";
-                        break;
-                    case MODIFY:
-                        status = "MODIFY";
-                        break;
-                }
+        Map<String, String> statusMap = status(Collections.singletonList(relativePath));
+        if (statusMap == null) {
+            return null;
+        }
+        if (statusMap.isEmpty()) {
+            return WorkingTreeStatus.NONE;
+        }
+        // 目录时返回其中任一变化文件的状态
+        String status = statusMap.get(relativePath);
+        return status != null ? status : statusMap.values().iterator().next();
+    }
+
+    /**
+     * 延迟检出时尚未写出到工作区的文件
+     */
+    private Collection<String> pendingPaths() {
+        try (Repository repository = openRepository()) {
+            return LazyWorkTree.pendingPaths(repository);
+        } catch (Exception e) {
+            log.error("读取未检出的文件出错：" + e.getMessage());
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Map<String, String> status(Collection<String> relativePaths) {
+        try (Repository repository = openRepository()) {
+            if (relativePaths != null && !relativePaths.isEmpty()) {
+                materialize(repository, relativePaths, true);
             }
+            return new WorkingTreeStatus(repository).scan(relativePaths);
         } catch (Exception e) {
             log.error("status() error:" + e.getMessage());
         }
-        return status;
+        return null;
     }
 
     @Override
     @Deprecated
     public byte[] dealHisFile(String []commitIds,String []relativePaths) {
-        init();
         if (commitIds.length != relativePaths.length) {
             log.error("readHisFile()参数输入错误");
             return null;
         }
         ByteArrayOutputStream out = null;
         byte[] rtnBytes = null;
-        try {
+        try (Repository repository = openRepository(); RevWalk walk = new RevWalk(repository)) {
             //定义输出流
             FileOutputStream fout = new FileOutputStream("D:/MrJ's Documents/downFiles/test.zip");
             //将文件的内容放进一个map里
@@ -308,19 +528,18 @@ public class JGitServiceImpl implements JGitService {
                 String revision = commitIds[i];
                 String relativePath = relativePaths[i];
                 String fileName = relativePath.substring(relativePath.lastIndexOf("/")+1);
-                RevWalk walk = new RevWalk(repository);
                 ObjectId objId = repository.resolve(revision);
                 RevCommit revCommit = walk.parseCommit(objId);
                 RevTree revTree = revCommit.getTree();
 
-                TreeWalk treeWalk = TreeWalk.forPath(repository, relativePath, revTree);
+                TreeWalk treeWalk = TreeWalk.forPath(walk.getObjectReader(), relativePath, revTree);
                 if (treeWalk == null) {
                     String msg = "版本号：" + revision + "在路径" + relativePath + "下无该文件";
                     log.error(msg);
                     throw new Exception(msg);
                 }
                 ObjectId blobId = treeWalk.getObjectId(0);
-                ObjectLoader loader = repository.open(blobId);
+                ObjectLoader loader = walk.getObjectReader().open(blobId);
                 out = new ByteArrayOutputStream();
                 loader.copyTo(out);
 
@@ -357,66 +576,57 @@ public class JGitServiceImpl implements JGitService {
 
     @Override
     public Map<String,byte[]> readHisFile(String []commitIds, String []relativePaths) {
-        init();
         // TODO zip压缩
         if (commitIds.length != relativePaths.length) {
             log.error("readHisFile()参数输入错误");
             return null;
         }
-        ByteArrayOutputStream out;
-        Map<String, byte[]> datas = new HashMap<>();
-        try {
-            //将文件的内容放进一个map里
-            for (int i = 0; i < commitIds.length; i++) {
-                String revision = commitIds[i];
-                String relativePath = relativePaths[i];
-                String fileName = relativePath.substring(relativePath.lastIndexOf("/") + 1);
-                RevWalk walk = new RevWalk(repository);
-                ObjectId objId = repository.resolve(revision);
-                RevCommit revCommit = walk.parseCommit(objId);
-                RevTree revTree = revCommit.getTree();
-
-                TreeWalk treeWalk = TreeWalk.forPath(repository, relativePath, revTree);
-                if (treeWalk == null) {
-                    String msg = "版本号：" + revision + "在路径" + relativePath + "下无该文件";
-                    log.error(msg);
-                    throw new Exception(msg);
-                }
-                ObjectId blobId = treeWalk.getObjectId(0);
-                ObjectLoader loader = repository.open(blobId);
-                out = new ByteArrayOutputStream();
-                loader.copyTo(out);
-                datas.put(fileName, out.toByteArray());
-                log.info("readHisFile()文件读取成功");
-            }
-        } catch (Exception e) {
-            log.error(e.getMessage());
+        Map<String, byte[]> datas = new LinkedHashMap<>();
+        Set<String> entryNames = new HashSet<>();
+        List<HisFile> hisFiles = readHisFiles(commitIds, relativePaths);
+        if (hisFiles == null) {
             return null;
         }
+        //将文件的内容放进一个map里，key保留相对路径，避免不同目录下的同名文件相互覆盖；读取失败的文件跳过
+        for (HisFile hisFile : hisFiles) {
+            if (hisFile.getError() != null) {
+                log.error(hisFile.getError());
+                continue;
+            }
+            datas.put(HisFileExporter.entryName(entryNames, hisFile.getCommitId(), hisFile.getRelativePath()),
+                    hisFile.getData());
+        }
+        log.info("readHisFile()文件读取成功：" + datas.size() + "/" + hisFiles.size());
         return datas;
     }
 
+    @Override
+    public List<HisFile> readHisFiles(String[] commitIds, String[] relativePaths) {
+        if (commitIds.length != relativePaths.length) {
+            log.error("readHisFiles()参数输入错误");
+            return null;
+        }
+        try (Repository repository = openRepository()) {
+            return new BlobBatchReader(repository).read(commitIds, relativePaths);
+        } catch (Exception e) {
+            log.error("readHisFiles()出错：" + e.getMessage());
+        }
+        return null;
+    }
+
     @Override
     public boolean compressZipFile(Map<String, byte[]> dataMap, String relativePath) {
-        try {
-            //定义输出流
-            FileOutputStream fout = new FileOutputStream(localPath + "/" + relativePath);
-            //装饰器模式：用ZipOutputStream包装输出流，使其拥有写入zip文件的能力
-            ZipOutputStream zipOut = new ZipOutputStream(new BufferedOutputStream(fout));
-
-            //遍历
-            Set<String> keys = dataMap.keySet();
-            for (String key : keys) {
-                //下面就是循环把每个文件写进zip文件
-                InputStream bin = new BufferedInputStream(new ByteArrayInputStream(dataMap.get(key)));
-                byte[] b = new byte[1024];
-                zipOut.putNextEntry(new ZipEntry(key));
-                int len;
-                while ((len = bin.read(b)) != -1) {
-                    zipOut.write(b, 0, len);
-                }
+        return compressZipFile(dataMap, relativePath, PropertiesUtils.getInt("gitlab.zipLevel", Deflater.DEFAULT_COMPRESSION));
+    }
+
+    @Override
+    public boolean compressZipFile(Map<String, byte[]> dataMap, String relativePath, int level) {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(localPath + "/" + relativePath))) {
+            ZipPackager packager = new ZipPackager(level);
+            for (Map.Entry<String, byte[]> entry : dataMap.entrySet()) {
+                packager.add(entry.getKey(), entry.getValue());
             }
-            zipOut.close();
+            packager.writeTo(out);
             log.info(relativePath + "打包成功");
         } catch (Exception e) {
             log.error("compressZipFile出错:" + e.getMessage());
@@ -425,6 +635,81 @@ public class JGitServiceImpl implements JGitService {
         return true;
     }
 
+    @Override
+    public boolean writeHisFile(String commitId, String relativePath, OutputStream out) {
+        try (Repository repository = openRepository(); HisFileExporter exporter = new HisFileExporter(repository)) {
+            exporter.write(commitId, relativePath, out);
+            return true;
+        } catch (Exception e) {
+            log.error("writeHisFile()出错：" + e.getMessage());
+        }
+        return false;
+    }
+
+    @Override
+    public boolean writeHisFile(String commitId, String relativePath, WritableByteChannel channel) {
+        try (Repository repository = openRepository(); HisFileExporter exporter = new HisFileExporter(repository)) {
+            exporter.write(commitId, relativePath, channel);
+            return true;
+        } catch (Exception e) {
+            log.error("writeHisFile()出错：" + e.getMessage());
+        }
+        return false;
+    }
+
+    @Override
+    public ByteBuffer readHisFileBuffer(String commitId, String relativePath) {
+        try (Repository repository = openRepository(); HisFileExporter exporter = new HisFileExporter(repository)) {
+            return exporter.read(commitId, relativePath);
+        } catch (Exception e) {
+            log.error("readHisFileBuffer()出错：" + e.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public boolean exportHisFiles(String[] commitIds, String[] relativePaths, OutputStream out) {
+        return exportHisFiles(commitIds, relativePaths, out, PropertiesUtils.getInt("gitlab.zipLevel", Deflater.DEFAULT_COMPRESSION));
+    }
+
+    @Override
+    public boolean exportHisFiles(String[] commitIds, String[] relativePaths, OutputStream out, int level) {
+        if (commitIds.length != relativePaths.length) {
+            log.error("exportHisFiles()参数输入错误");
+            return false;
+        }
+        try (Repository repository = openRepository(); HisFileExporter exporter = new HisFileExporter(repository)) {
+            OutputStream buffered = new BufferedOutputStream(out);
+            boolean complete = exporter.writeZip(commitIds, relativePaths, new ZipPackager(level), buffered);
+            buffered.flush();
+            return complete;
+        } catch (Exception e) {
+            log.error("exportHisFiles()出错：" + e.getMessage());
+        }
+        return false;
+    }
+
+    @Override
+    public boolean exportSnapshot(String commitId, String relativePath, ArchiveFormat format, OutputStream out) {
+        long start = System.currentTimeMillis();
+        try (Repository repository = openRepository()) {
+            ObjectId id = repository.resolve(commitId);
+            if (id == null) {
+                log.error("exportSnapshot()版本不存在：" + commitId);
+                return false;
+            }
+            OutputStream buffered = new BufferedOutputStream(out);
+            int files = new SnapshotArchiver(repository).write(id, relativePath, format, buffered);
+            buffered.flush();
+            log.info("导出快照：" + commitId + "，路径：" + relativePath + "，文件数：" + files
+                    + "，耗时：" + (System.currentTimeMillis() - start) + "ms");
+            return true;
+        } catch (Exception e) {
+            log.error("exportSnapshot()出错：" + e.getMessage());
+        }
+        return false;
+    }
+
     public boolean upload(MultipartFile file, String relativePath) {
         boolean flag = true;
         try {
@@ -444,7 +729,18 @@ public class JGitServiceImpl implements JGitService {
             if (!dest.getParentFile().exists()) {
                 dest.getParentFile().mkdirs();
             }
-            file.transferTo(dest);
+            Lock lock = RepositoryManager.getInstance().writeLock(localPath);
+            lock.lock();
+            try (Repository repository = openRepository();
+                 ReadableByteChannel source = Channels.newChannel(file.getInputStream())) {
+                // 一次读取同时写入文件和对象库，并直接暂存
+                if (!new UploadWriter(repository).write(source, file.getSize(), relativePath + "/" + fileName)) {
+                    log.info("上传文件内容未变化：" + fileName);
+                }
+            } finally {
+                lock.unlock();
+            }
+            treeCache.refresh(relativePath + "/" + fileName);
             log.info("上传成功");
         } catch (Exception e) {
             log.error(e.getMessage());
@@ -455,21 +751,56 @@ public class JGitServiceImpl implements JGitService {
 
     @Override
     public boolean deleteFile(String relativePath) {
-        return FileUtils.deleteFolder(localPath + "/" + relativePath);
+        boolean flag;
+        Lock lock = RepositoryManager.getInstance().writeLock(localPath);
+        lock.lock();
+        try (Repository repository = openRepository()) {
+            // 未检出的文件取消assume-valid，删除后才能被识别为删除
+            materialize(repository, Collections.singletonList(relativePath), false);
+            flag = FileUtils.deleteFolder(localPath + "/" + relativePath);
+        } catch (IOException e) {
+            log.error("deleteFile()出错：" + e.getMessage());
+            flag = false;
+        } finally {
+            lock.unlock();
+        }
+        treeCache.refresh(relativePath);
+        return flag;
     }
 
     @Override
     public TreeItemVO initDirTreeStatus() {
-        TreeItemVO root = new TreeItemVO();
-        createFileTree(localPath,root);
-        root = root.getChildren().get(0);
-        log.info("初始化文件目录结构成功");
-        return root;
+        // 首次请求时建立，之后由目录监听和写操作增量维护
+        return treeCache.getTree();
+    }
+
+    @Override
+    public List<TreeItemVO> listChildren(String path, int depth, int offset, int limit) {
+        return listChildren(null, path, depth, offset, limit);
+    }
+
+    @Override
+    public List<TreeItemVO> listChildren(String commitId, String path, int depth, int offset, int limit) {
+        try (Repository repository = openRepository()) {
+            return new TreeBrowser(repository).list(commitId, path, depth, offset, limit);
+        } catch (Exception e) {
+            log.error("listChildren()出错：" + e.getMessage());
+        }
+        return null;
     }
 
     @Override
     public boolean createFolder(String filePath) {
-         return FileUtils.createFolder(localPath + "/" + filePath);
+        boolean flag;
+        Lock lock = RepositoryManager.getInstance().writeLock(localPath);
+        lock.lock();
+        try {
+            flag = FileUtils.createFolder(localPath + "/" + filePath);
+        } finally {
+            lock.unlock();
+        }
+        treeCache.refresh(filePath);
+        return flag;
     }
 
     private List<Map<String,Object>> getDifInfo(Iterable<RevCommit> commits) {
@@ -487,7 +818,9 @@ public class JGitServiceImpl implements JGitService {
                 String commitId = commit.getName();  //这个应该就是提交的版本
                 ObjectId treeId = commit.getTree().getId();     // 对比差异所用的ID
 
-                log.info("提交人：" + name + "\t提交时间：" + sdf.format(commitDate));
+                if (log.isDebugEnabled()) {
+                    log.debug("提交人：{}\t提交时间：{}", name, commitDate);
+                }
 //                System.out.println("authorEmail:"+email);
 //                System.out.println("authorName:"+name);
 //                System.out.println("commitEmail:"+commitEmail);
@@ -510,61 +843,33 @@ public class JGitServiceImpl implements JGitService {
         return infoList;
     }
 
-    private AbstractTreeIterator prepareTreeParser(ObjectId treeId){
-        try (RevWalk walk = new RevWalk(repository)) {
-            RevTree tree = walk.parseTree(treeId);
-            CanonicalTreeParser oldTreeParser = new CanonicalTreeParser();
-            try (ObjectReader oldReader = repository.newObjectReader()) {
-                oldTreeParser.reset(oldReader, tree.getId());
-            }
-            walk.dispose();
-            return oldTreeParser;
-        }catch (Exception e) {
-            log.error(e.getMessage());
-            e.printStackTrace();
-        }
-        return null;
-    }
-
     /**
-     * 递归建立文件目录树
-     * @param obj   文件/目录
-     * @param root  当前子树根节点
+     * 按新旧HEAD之间变化的文件增量刷新目录树，变化过多时直接重建
      */
-    private void createFileTree(Object obj, TreeItemVO root) {
-        File directory;
-        if (obj instanceof File) {
-            directory = (File) obj;
-        } else {
-            directory = new File(obj.toString());
+    private void refreshTree(Repository repository, ObjectId oldHead, ObjectId newHead) throws IOException {
+        if (oldHead == null || newHead == null) {
+            treeCache.invalidate();
+            return;
         }
-        List<TreeItemVO> files;
-        if (root.getChildren() == null) {
-            files = new ArrayList<>();
-        } else {
-            files = root.getChildren();
-        }
-        if (!directory.getName().equals(".git")) {  // 过滤.git目录
-            String absolutePath = directory.getAbsolutePath();
-            String relativePath = absolutePath.replace(localPath + "\\", "");
-            TreeItemVO treeItemVO = new TreeItemVO();
-            treeItemVO.setFileName(directory.getName());
-            treeItemVO.setFilePath(absolutePath);
-            if (directory.isFile()) {
-                treeItemVO.setType("file");
-                treeItemVO.setStatus(status(relativePath));
-                files.add(treeItemVO);
-            } else if (directory.isDirectory()) {
-                treeItemVO.setType("dir");
-                File[] fileArr = directory.listFiles();
-                for (File fileOne : fileArr) {
-                    createFileTree(fileOne, treeItemVO);
-                    if (!files.contains(treeItemVO)) {
-                        files.add(treeItemVO);
-                    }
+        if (oldHead.equals(newHead)) {
+            return;
+        }
+        List<String> changedPaths = new ArrayList<>();
+        try (RevWalk walk = new RevWalk(repository); TreeWalk treeWalk = new TreeWalk(walk.getObjectReader())) {
+            treeWalk.addTree(walk.parseCommit(oldHead).getTree());
+            treeWalk.addTree(walk.parseCommit(newHead).getTree());
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            treeWalk.setRecursive(true);
+            while (treeWalk.next()) {
+                if (changedPaths.size() >= TREE_REFRESH_LIMIT) {
+                    treeCache.invalidate();
+                    return;
                 }
+                changedPaths.add(treeWalk.getPathString());
             }
         }
-        root.setChildren(files);
+        for (String changedPath : changedPaths) {
+            treeCache.refresh(changedPath);
+        }
     }
 }
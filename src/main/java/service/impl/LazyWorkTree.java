@@ -0,0 +1,179 @@
+package service.impl;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevWalk;
+import utils.PathUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * @ClassName LazyWorkTree
+ * @Description 延迟检出的工作区：不检出clone时，暂存区按HEAD建立并标记为assume-valid，
+ *              历史和文件读取直接使用对象库，工作区文件在首次上传、删除、查询状态时才写出
+ * @Author jinym
+ **/
+public class LazyWorkTree {
+
+    private LazyWorkTree() {
+    }
+
+    /**
+     * 不检出的clone不会建立本地分支：按远程分支建立本地分支并设置上游，HEAD指向该分支
+     */
+    public static void createBranch(Repository repository, String branch) throws IOException {
+        Ref remote = repository.exactRef(Constants.R_REMOTES + Constants.DEFAULT_REMOTE_NAME + "/" + branch);
+        if (remote == null) {
+            throw new IOException("远程分支不存在：" + branch);
+        }
+        RefUpdate update = repository.updateRef(Constants.R_HEADS + branch);
+        update.setNewObjectId(remote.getObjectId());
+        update.setRefLogMessage("clone: from " + remote.getName(), false);
+        update.update();
+        RefUpdate head = repository.updateRef(Constants.HEAD);
+        head.disableRefLog();
+        head.link(Constants.R_HEADS + branch);
+        StoredConfig config = repository.getConfig();
+        config.setString(ConfigConstants.CONFIG_BRANCH_SECTION, branch, ConfigConstants.CONFIG_KEY_REMOTE,
+                Constants.DEFAULT_REMOTE_NAME);
+        config.setString(ConfigConstants.CONFIG_BRANCH_SECTION, branch, ConfigConstants.CONFIG_KEY_MERGE,
+                Constants.R_HEADS + branch);
+        config.save();
+    }
+
+    /**
+     * 按HEAD建立暂存区，全部条目标记为assume-valid，工作区为空时状态仍为未修改
+     */
+    public static void initIndex(Repository repository) throws IOException {
+        ObjectId head = repository.resolve(Constants.HEAD);
+        if (head == null) {
+            return;
+        }
+        DirCache index = repository.lockDirCache();
+        try (RevWalk walk = new RevWalk(repository)) {
+            DirCacheBuilder builder = index.builder();
+            builder.addTree(new byte[0], DirCacheEntry.STAGE_0, walk.getObjectReader(), walk.parseCommit(head).getTree());
+            builder.finish();
+            for (int i = 0; i < index.getEntryCount(); i++) {
+                index.getEntry(i).setAssumeValid(true);
+            }
+            index.write();
+            index.commit();
+        } finally {
+            index.unlock();
+        }
+    }
+
+    /**
+     * 写出路径下尚未检出的文件，并取消assume-valid，之后按正常的工作区处理
+     *
+     * @param paths 相对git库的文件或目录路径，""为整个工作区
+     * @return 写出的文件数
+     */
+    public static int materialize(Repository repository, Collection<String> paths) throws IOException {
+        return materialize(repository, paths, true);
+    }
+
+    /**
+     * @param writeMissing 为false时只取消assume-valid，不写出文件(即将删除的路径)
+     */
+    public static int materialize(Repository repository, Collection<String> paths, boolean writeMissing) throws IOException {
+        DirCache index = repository.lockDirCache();
+        int written = 0;
+        boolean changed = false;
+        try (ObjectReader reader = repository.newObjectReader()) {
+            for (String path : paths) {
+                for (DirCacheEntry entry : entriesOf(index, path)) {
+                    if (!entry.isAssumeValid()) {
+                        continue;
+                    }
+                    File file = new File(repository.getWorkTree(), entry.getPathString());
+                    if (writeMissing && !file.exists() && entry.getFileMode() != FileMode.GITLINK) {
+                        file.getParentFile().mkdirs();
+                        try (OutputStream out = new FileOutputStream(file)) {
+                            reader.open(entry.getObjectId(), Constants.OBJ_BLOB).copyTo(out);
+                        }
+                        if (entry.getFileMode() == FileMode.EXECUTABLE_FILE) {
+                            file.setExecutable(true);
+                        }
+                        entry.setLength(file.length());
+                        entry.setLastModified(Files.getLastModifiedTime(file.toPath()).toInstant());
+                        written++;
+                    }
+                    // 已存在的文件保留为空的元数据，下次比较时读取内容
+                    entry.setAssumeValid(false);
+                    changed = true;
+                }
+            }
+            if (changed) {
+                index.write();
+                index.commit();
+            }
+        } finally {
+            // commit()后已释放，出错时释放index.lock
+            index.unlock();
+        }
+        return written;
+    }
+
+    /**
+     * 暂存区中是否还有未检出的条目
+     */
+    public static boolean isLazy(Repository repository) throws IOException {
+        DirCache index = repository.readDirCache();
+        for (int i = 0; i < index.getEntryCount(); i++) {
+            if (index.getEntry(i).isAssumeValid()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 尚未检出(assume-valid且工作区中不存在)的文件，目录树需要从暂存区补充这些节点
+     *
+     * @return 相对git库的文件路径，按暂存区顺序
+     */
+    public static List<String> pendingPaths(Repository repository) throws IOException {
+        DirCache index = repository.readDirCache();
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < index.getEntryCount(); i++) {
+            DirCacheEntry entry = index.getEntry(i);
+            if (entry.isAssumeValid() && entry.getFileMode() != FileMode.GITLINK
+                    && !new File(repository.getWorkTree(), entry.getPathString()).exists()) {
+                paths.add(entry.getPathString());
+            }
+        }
+        return paths;
+    }
+
+    private static DirCacheEntry[] entriesOf(DirCache index, String path) {
+        String normalized = PathUtils.normalize(path);
+        if (normalized.isEmpty()) {
+            DirCacheEntry[] all = new DirCacheEntry[index.getEntryCount()];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = index.getEntry(i);
+            }
+            return all;
+        }
+        DirCacheEntry entry = index.getEntry(normalized);
+        return entry != null ? new DirCacheEntry[]{entry} : index.getEntriesWithin(normalized);
+    }
+}
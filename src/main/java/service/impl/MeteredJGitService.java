@@ -0,0 +1,137 @@
+package service.impl;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import service.JGitService;
+import utils.PropertiesUtils;
+
+import javax.management.ObjectName;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @ClassName MeteredJGitService
+ * @Description JGitService的统计代理：每个方法按方法名统计调用次数、失败次数、执行中数量和耗时直方图，发布到JMX；
+ *              超过gitlab.slowOperationMillis的调用以warn级别记录方法名、参数和耗时
+ * @Author jinym
+ **/
+public class MeteredJGitService implements InvocationHandler {
+
+    // 慢操作日志中单个参数的最大长度
+    private static final int MAX_ARG_LENGTH = 200;
+
+    private Logger log = LoggerFactory.getLogger(MeteredJGitService.class);
+
+    // 慢操作阈值，小于等于0时不记录
+    private final long slowNanos = PropertiesUtils.getLong("gitlab.slowOperationMillis", 1000L) * 1000 * 1000;
+
+    private final JGitService delegate;
+
+    private final String repositoryName;
+
+    // 方法名 -> 统计，重载的方法合并统计；创建后只读
+    private final Map<String, OperationMetrics> operations = new TreeMap<>();
+
+    private MeteredJGitService(JGitService delegate, String repositoryName) {
+        this.delegate = delegate;
+        this.repositoryName = repositoryName;
+        for (Method method : JGitService.class.getMethods()) {
+            operations.computeIfAbsent(method.getName(), name -> new OperationMetrics());
+        }
+        for (Map.Entry<String, OperationMetrics> entry : operations.entrySet()) {
+            GitMetrics.register(entry.getValue(), objectName(entry.getKey()));
+        }
+    }
+
+    /**
+     * 包装服务，gitlab.metricsEnabled为false时直接返回原服务
+     *
+     * @param delegate       实际的服务，代理关闭时一起关闭
+     * @param repositoryName 仓库名，用于区分JMX名称
+     */
+    public static JGitService wrap(JGitService delegate, String repositoryName) {
+        if (!PropertiesUtils.getBoolean("gitlab.metricsEnabled", true)) {
+            return delegate;
+        }
+        return (JGitService) Proxy.newProxyInstance(JGitService.class.getClassLoader(),
+                new Class<?>[]{JGitService.class}, new MeteredJGitService(delegate, repositoryName));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        OperationMetrics metrics = operations.get(method.getName());
+        if (method.getDeclaringClass() == Object.class || metrics == null) {
+            return method.invoke(delegate, args);
+        }
+        if ("close".equals(method.getName())) {
+            for (String name : operations.keySet()) {
+                GitMetrics.unregister(objectName(name));
+            }
+        }
+        metrics.begin();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object result = method.invoke(delegate, args);
+            // 本服务出错时返回null/false
+            failed = method.getReturnType() != void.class && (result == null || Boolean.FALSE.equals(result));
+            return result;
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            boolean slow = slowNanos > 0 && elapsed >= slowNanos;
+            metrics.end(elapsed, failed, slow);
+            if (slow) {
+                log.warn("慢操作：" + repositoryName + "." + method.getName() + "(" + describe(args) + ")，耗时："
+                        + elapsed / 1000000 + "ms" + (failed ? "，失败" : ""));
+            }
+        }
+    }
+
+    private String objectName(String operation) {
+        return GitMetrics.DOMAIN + ":type=Operation,repository=" + ObjectName.quote(repositoryName)
+                + ",name=" + operation;
+    }
+
+    /**
+     * 慢操作日志中的参数，流等对象只记录类型，过长的截断
+     */
+    private static String describe(Object[] args) {
+        if (args == null) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder();
+        for (Object arg : args) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            String text;
+            if (arg instanceof Object[]) {
+                text = Arrays.toString((Object[]) arg);
+            } else if (arg instanceof byte[]) {
+                text = "byte[" + ((byte[]) arg).length + "]";
+            } else if (arg instanceof Map) {
+                text = "Map(" + ((Map<?, ?>) arg).size() + ")";
+            } else if (arg instanceof Collection) {
+                text = arg.toString();
+            } else if (arg instanceof AnyObjectId) {
+                text = ((AnyObjectId) arg).name();
+            } else if (arg == null || arg instanceof CharSequence || arg instanceof Number || arg instanceof Boolean) {
+                text = String.valueOf(arg);
+            } else {
+                // 输出流、上传文件等只记录类型
+                text = arg.getClass().getSimpleName();
+            }
+            builder.append(text.length() > MAX_ARG_LENGTH ? text.substring(0, MAX_ARG_LENGTH) + "..." : text);
+        }
+        return builder.toString();
+    }
+}
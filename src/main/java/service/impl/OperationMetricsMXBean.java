@@ -0,0 +1,50 @@
+package service.impl;
+
+/**
+ * 单个JGitService操作的统计，JMX名称为jgit:type=Operation,repository=仓库名,name=方法名
+ */
+public interface OperationMetricsMXBean {
+
+    /**
+     * 调用次数
+     */
+    long getCalls();
+
+    /**
+     * 失败次数：抛出异常，或返回null/false
+     */
+    long getErrors();
+
+    /**
+     * 正在执行的调用数
+     */
+    int getInFlight();
+
+    /**
+     * 超过gitlab.slowOperationMillis的调用次数
+     */
+    long getSlowCalls();
+
+    double getMeanMillis();
+
+    double getMaxMillis();
+
+    /**
+     * 分位数取所在区间的上界，超过最大区间时为最大耗时
+     */
+    double getP50Millis();
+
+    double getP95Millis();
+
+    double getP99Millis();
+
+    /**
+     * 耗时直方图区间的上界(毫秒)，最后一个区间没有上界
+     */
+    long[] getBucketBoundsMillis();
+
+    /**
+     * 各区间的调用次数，比getBucketBoundsMillis()多一个
+     */
+    long[] getBucketCounts();
+}
@@ -0,0 +1,79 @@
+package service.impl;
+
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.file.PackFile;
+import org.eclipse.jgit.lib.ObjectDatabase;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * @ClassName PackOrder
+ * @Description 按对象在pack文件中的位置排序，批量读取时顺序读盘。
+ *              pack的位置只能通过JGit的内部API(org.eclipse.jgit.internal.storage.file)取得，本类是唯一使用它的地方，
+ *              按JGit 5.7.0的ObjectDirectory.getPacks()、PackFile.getIndex().findOffset()编写，升级JGit时需要确认；
+ *              内部API不可用、读取pack索引出错或对象库不是本地目录时保持原有顺序，只影响读盘顺序，不影响结果
+ * @Author jinym
+ **/
+class PackOrder {
+
+    private static final Logger log = LoggerFactory.getLogger(PackOrder.class);
+
+    private PackOrder() {
+    }
+
+    /**
+     * 按所在pack和pack内的偏移稳定排序，同一pack中相邻的对象一起读取；不在pack中的松散对象放在最后，保持原有顺序
+     *
+     * @param items 待排序的条目，原地排序
+     * @param idOf  条目对应的对象
+     */
+    static <T> void sort(Repository repository, List<T> items, Function<T, ObjectId> idOf) {
+        List<Position<T>> positions = new ArrayList<>(items.size());
+        try {
+            ObjectDatabase database = repository.getObjectDatabase();
+            if (!(database instanceof ObjectDirectory)) {
+                return;
+            }
+            List<PackFile> packs = new ArrayList<>(((ObjectDirectory) database).getPacks());
+            for (T item : items) {
+                Position<T> position = new Position<>(item);
+                ObjectId id = idOf.apply(item);
+                for (int i = 0; i < packs.size(); i++) {
+                    long offset = packs.get(i).getIndex().findOffset(id);
+                    if (offset >= 0) {
+                        position.pack = i;
+                        position.offset = offset;
+                        break;
+                    }
+                }
+                positions.add(position);
+            }
+        } catch (Exception | LinkageError e) {
+            log.debug("读取pack位置出错，按原有顺序读取：" + e.getMessage());
+            return;
+        }
+        Collections.sort(positions, Comparator.<Position<T>>comparingInt(p -> p.pack).thenComparingLong(p -> p.offset));
+        for (int i = 0; i < positions.size(); i++) {
+            items.set(i, positions.get(i).item);
+        }
+    }
+
+    private static class Position<T> {
+        final T item;
+        // 所在pack的序号和偏移，松散对象为Integer.MAX_VALUE
+        int pack = Integer.MAX_VALUE;
+        long offset = 0;
+
+        Position(T item) {
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package service.impl;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @ClassName PathHistoryIndex
+ * @Description 文件路径 -> 修改过该文件的提交 的持久化索引，保存在.git/path-history.idx，
+ *              HEAD变化后在后台增量更新；查询最近k个版本只需O(k)，索引缺失或过期时由调用方按maxCount有限遍历
+ * @Author jinym
+ **/
+public class PathHistoryIndex {
+
+    private static final String FILE_NAME = "path-history.idx";
+
+    private static final int MAGIC = 0x50484931;  // PHI1
+
+    private Logger log = LoggerFactory.getLogger(PathHistoryIndex.class);
+
+    private final Callable<Repository> repositorySupplier;
+
+    private final AtomicBoolean updating = new AtomicBoolean(false);
+
+    private volatile Snapshot snapshot = null;
+
+    // 是否已尝试从磁盘加载
+    private volatile boolean loaded = false;
+
+    /**
+     * @param repositorySupplier 后台更新时获取仓库，用完会close()
+     */
+    public PathHistoryIndex(Callable<Repository> repositorySupplier) {
+        this.repositorySupplier = repositorySupplier;
+    }
+
+    /**
+     * 查询修改过该文件的最近k个提交
+     *
+     * @param head     当前HEAD
+     * @param path     相对git库的文件路径
+     * @param maxCount 返回的个数，小于等于0时返回全部
+     * @return 从新到旧的提交；索引缺失或与HEAD不一致、或path不是索引中的文件时返回null，并安排后台更新
+     */
+    public List<ObjectId> newest(ObjectId head, String path, int maxCount) {
+        Snapshot current = snapshot;
+        if (current == null || head == null || !head.equals(current.head)) {
+            scheduleUpdate();
+            return null;
+        }
+        int[] ordinals = current.paths.get(path);
+        if (ordinals == null) {
+            // 目录等非文件路径交给调用方遍历，从未存在过的文件直接返回空
+            return current.isDirectory(path) ? null : Collections.<ObjectId>emptyList();
+        }
+        int count = maxCount <= 0 ? ordinals.length : Math.min(maxCount, ordinals.length);
+        List<ObjectId> commits = new ArrayList<>(count);
+        for (int i = ordinals.length - 1; i >= ordinals.length - count; i--) {
+            commits.add(current.commits.get(ordinals[i]));
+        }
+        return commits;
+    }
+
+    /**
+     * 在后台加载或增量更新索引，已有更新在执行时忽略
+     */
+    public void scheduleUpdate() {
+        if (!updating.compareAndSet(false, true)) {
+            return;
+        }
+        GitExecutors.background().execute(() -> {
+            try (Repository repository = repositorySupplier.call()) {
+                update(repository);
+            } catch (Exception e) {
+                log.error("文件历史索引更新失败：" + e.getMessage());
+            } finally {
+                updating.set(false);
+            }
+        });
+    }
+
+    /**
+     * 更新索引到当前HEAD：旧HEAD是新HEAD的祖先时只处理新增的提交，否则重建
+     */
+    public synchronized void update(Repository repository) throws IOException {
+        File file = new File(repository.getDirectory(), FILE_NAME);
+        if (!loaded) {
+            snapshot = load(file);
+            loaded = true;
+        }
+        ObjectId head = repository.resolve(Constants.HEAD);
+        Snapshot current = snapshot;
+        if (head == null || (current != null && head.equals(current.head))) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try (RevWalk walk = new RevWalk(repository)) {
+            walk.setRetainBody(false);
+            RevCommit headCommit = walk.parseCommit(head);
+            if (current != null && !isAncestor(walk, current.head, headCommit)) {
+                current = null;
+            }
+            walk.reset();
+            walk.sort(RevSort.TOPO, true);
+            walk.sort(RevSort.REVERSE, true);
+            walk.markStart(headCommit);
+            if (current != null) {
+                walk.markUninteresting(walk.parseCommit(current.head));
+            }
+            Snapshot next = current == null ? new Snapshot() : current.copy();
+            next.head = head.copy();
+            Map<String, List<Integer>> added = new HashMap<>();
+            for (RevCommit commit : walk) {
+                int ordinal = next.commits.size();
+                next.commits.add(commit.copy());
+                for (String path : changedPaths(walk, commit)) {
+                    added.computeIfAbsent(path, k -> new ArrayList<>()).add(ordinal);
+                }
+            }
+            next.append(added);
+            save(file, next);
+            snapshot = next;
+            log.info("文件历史索引已更新到" + head.name() + "，新增提交：" + (next.commits.size()
+                    - (current == null ? 0 : current.commits.size())) + "，耗时：" + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    private static boolean isAncestor(RevWalk walk, ObjectId ancestor, RevCommit head) throws IOException {
+        if (!walk.getObjectReader().has(ancestor)) {
+            return false;
+        }
+        return walk.isMergedInto(walk.parseCommit(ancestor), head);
+    }
+
+    /**
+     * 本次提交修改过的文件：与唯一父提交不同，合并提交时与所有父提交都不同
+     */
+    private static List<String> changedPaths(RevWalk walk, RevCommit commit) throws IOException {
+        List<String> paths = new ArrayList<>();
+        try (TreeWalk treeWalk = new TreeWalk(walk.getObjectReader())) {
+            treeWalk.setRecursive(true);
+            int parentCount = commit.getParentCount();
+            for (RevCommit parent : commit.getParents()) {
+                walk.parseHeaders(parent);
+                treeWalk.addTree(parent.getTree());
+            }
+            treeWalk.addTree(commit.getTree());
+            if (parentCount > 0) {
+                treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            }
+            long entries = 0;
+            while (treeWalk.next()) {
+                entries++;
+                // 删除的文件也算作一次修改
+                boolean changed = true;
+                for (int i = 0; i < parentCount && changed; i++) {
+                    changed = !treeWalk.idEqual(i, parentCount) || treeWalk.getRawMode(i) != treeWalk.getRawMode(parentCount);
+                }
+                if (changed) {
+                    paths.add(treeWalk.getPathString());
+                }
+            }
+            GitMetrics.treeEntriesWalked(entries);
+        }
+        return paths;
+    }
+
+    private Snapshot load(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            Snapshot loaded = new Snapshot();
+            byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+            in.readFully(raw);
+            loaded.head = ObjectId.fromRaw(raw);
+            int commitCount = in.readInt();
+            for (int i = 0; i < commitCount; i++) {
+                in.readFully(raw);
+                loaded.commits.add(ObjectId.fromRaw(raw));
+            }
+            int pathCount = in.readInt();
+            for (int i = 0; i < pathCount; i++) {
+                String path = in.readUTF();
+                int[] ordinals = new int[in.readInt()];
+                for (int j = 0; j < ordinals.length; j++) {
+                    ordinals[j] = in.readInt();
+                }
+                loaded.paths.put(path, ordinals);
+            }
+            return loaded;
+        } catch (IOException e) {
+            log.error("文件历史索引读取失败，将重建：" + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 先写临时文件再替换，避免进程中断时留下不完整的索引
+     */
+    private void save(File file, Snapshot data) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            data.head.copyRawTo(out);
+            out.writeInt(data.commits.size());
+            for (ObjectId commit : data.commits) {
+                commit.copyRawTo(out);
+            }
+            out.writeInt(data.paths.size());
+            for (Map.Entry<String, int[]> entry : data.paths.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                for (int ordinal : entry.getValue()) {
+                    out.writeInt(ordinal);
+                }
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 不可变的索引快照，更新时复制后替换，查询无需加锁
+     */
+    private static class Snapshot {
+        ObjectId head;
+
+        // 按拓扑顺序从旧到新的提交，下标即序号
+        List<ObjectId> commits = new ArrayList<>();
+
+        // 路径 -> 修改过该文件的提交序号(递增)
+        Map<String, int[]> paths = new HashMap<>();
+
+        Snapshot copy() {
+            Snapshot copy = new Snapshot();
+            copy.commits = new ArrayList<>(commits);
+            copy.paths = new HashMap<>(paths);
+            return copy;
+        }
+
+        void append(Map<String, List<Integer>> added) {
+            for (Map.Entry<String, List<Integer>> entry : added.entrySet()) {
+                int[] old = paths.get(entry.getKey());
+                int offset = old == null ? 0 : old.length;
+                int[] merged = old == null ? new int[entry.getValue().size()] : Arrays.copyOf(old, offset + entry.getValue().size());
+                for (int i = 0; i < entry.getValue().size(); i++) {
+                    merged[offset + i] = entry.getValue().get(i);
+                }
+                paths.put(entry.getKey(), merged);
+            }
+        }
+
+        boolean isDirectory(String path) {
+            String prefix = path.endsWith("/") ? path : path + "/";
+            for (String key : paths.keySet()) {
+                if (key.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package service.impl;
+
+import entity.CacheStats;
+import org.eclipse.jgit.lib.ObjectId;
+import utils.PropertiesUtils;
+
+/**
+ * @ClassName RenameCache
+ * @Description 重命名识别结果缓存：提交和路径不可变，(新增该路径的提交, 路径) -> 重命名前的路径永不失效，按估算字节数LRU淘汰
+ * @Author jinym
+ **/
+public class RenameCache {
+
+    // 已识别过、不是重命名的路径
+    private static final String NONE = "";
+
+    private final WeightedLruCache<Key, String> edges = new WeightedLruCache<>(
+            PropertiesUtils.getBytes("gitlab.renameCacheBytes", 4L * 1024 * 1024), RenameCache::weigh);
+
+    /**
+     * @return 重命名前的路径；不是重命名时返回""，未缓存时返回null
+     */
+    public String get(ObjectId commitId, String path) {
+        return edges.get(new Key(commitId, path));
+    }
+
+    /**
+     * @param oldPath 重命名前的路径，不是重命名时为null
+     */
+    public void put(ObjectId commitId, String path, String oldPath) {
+        edges.put(new Key(commitId, path), oldPath == null ? NONE : oldPath);
+    }
+
+    public CacheStats stats() {
+        return edges.stats();
+    }
+
+    private static long weigh(String oldPath) {
+        // 键中的路径取不到，按平均路径长度计入固定部分
+        return 256 + 2L * oldPath.length();
+    }
+
+    private static final class Key {
+        private final ObjectId commitId;
+        private final String path;
+
+        Key(ObjectId commitId, String path) {
+            this.commitId = commitId.copy();
+            this.path = path;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return commitId.equals(key.commitId) && path.equals(key.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * commitId.hashCode() + path.hashCode();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package service.impl;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import utils.PropertiesUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @ClassName RenameFollower
+ * @Description 跟随重命名的文件历史：按当前路径过滤遍历提交，只在路径从全部父提交中消失(即被新增)的提交上识别重命名，
+ *              且只用该新增和本次提交的删除作为候选；识别数量受gitlab.renameLimit限制，结果缓存在RenameCache中，
+ *              找到重命名后从父提交开始按原路径继续遍历
+ * @Author jinym
+ **/
+public class RenameFollower {
+
+    // 参与相似度比较的删除文件数上限，超过时只识别内容完全相同的重命名
+    private static final int RENAME_LIMIT = PropertiesUtils.getInt("gitlab.renameLimit", 1000);
+
+    // 识别为重命名的最低相似度(0-100)
+    private static final int RENAME_SCORE = PropertiesUtils.getInt("gitlab.renameScore", 50);
+
+    private final Repository repository;
+
+    private final RenameCache cache;
+
+    /**
+     * @param cache 重命名识别结果缓存，为null时不缓存
+     */
+    public RenameFollower(Repository repository, RenameCache cache) {
+        this.repository = repository;
+        this.cache = cache;
+    }
+
+    /**
+     * 文件的一个版本：修改过该文件的提交，以及该提交中文件的路径
+     */
+    public static class Version {
+        private final RevCommit commit;
+        private final String path;
+
+        Version(RevCommit commit, String path) {
+            this.commit = commit;
+            this.path = path;
+        }
+
+        public RevCommit getCommit() {
+            return commit;
+        }
+
+        public String getPath() {
+            return path;
+        }
+    }
+
+    /**
+     * 从新到旧读取文件的版本，文件被重命名前的提交也包含在内
+     *
+     * @param head     开始的提交
+     * @param path     相对git库的文件路径
+     * @param maxCount 返回的个数，小于等于0时返回全部
+     */
+    public List<Version> follow(ObjectId head, String path, int maxCount) throws IOException {
+        List<Version> versions = new ArrayList<>();
+        ObjectId start = head;
+        String current = path;
+        // 未过滤的遍历，用于读取真实的父提交(过滤遍历会改写父提交)
+        try (RevWalk raw = new RevWalk(repository)) {
+            while (start != null) {
+                ObjectId next = null;
+                String renamedFrom = null;
+                // 每段使用新的RevWalk，上一段改写过的父提交不影响下一段
+                try (RevWalk walk = new RevWalk(repository)) {
+                    walk.markStart(walk.parseCommit(start));
+                    walk.setTreeFilter(AndTreeFilter.create(PathFilter.create(current), TreeFilter.ANY_DIFF));
+                    RevCommit commit;
+                    while ((commit = walk.next()) != null) {
+                        versions.add(new Version(commit, current));
+                        if (maxCount > 0 && versions.size() >= maxCount) {
+                            return versions;
+                        }
+                        RevCommit parsed = raw.parseCommit(commit);
+                        renamedFrom = renamedFrom(raw, parsed, current);
+                        if (renamedFrom != null) {
+                            next = parsed.getParent(0);
+                            break;
+                        }
+                    }
+                }
+                start = next;
+                current = renamedFrom;
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * 路径在提交中存在、在全部父提交中都不存在时，与第一个父提交对比识别重命名
+     *
+     * @return 重命名前的路径，不是重命名时返回null
+     */
+    private String renamedFrom(RevWalk raw, RevCommit commit, String path) throws IOException {
+        if (commit.getParentCount() == 0) {
+            return null;
+        }
+        ObjectReader reader = raw.getObjectReader();
+        if (!exists(reader, path, commit.getTree())) {
+            return null;
+        }
+        for (RevCommit parent : commit.getParents()) {
+            if (exists(reader, path, raw.parseCommit(parent).getTree())) {
+                return null;
+            }
+        }
+        String cached = cache == null ? null : cache.get(commit, path);
+        if (cached != null) {
+            return cached.isEmpty() ? null : cached;
+        }
+        String oldPath = detect(reader, commit.getParent(0).getTree(), commit.getTree(), path);
+        if (cache != null) {
+            cache.put(commit, path, oldPath);
+        }
+        return oldPath;
+    }
+
+    /**
+     * 只以新增的path和本次提交删除的文件作为候选，比较次数与删除的文件数成正比
+     */
+    private String detect(ObjectReader reader, RevTree oldTree, RevTree newTree, String path) throws IOException {
+        List<DiffEntry> candidates = new ArrayList<>();
+        try (TreeWalk treeWalk = new TreeWalk(reader)) {
+            treeWalk.addTree(oldTree);
+            treeWalk.addTree(newTree);
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            long entries = 0;
+            for (DiffEntry entry : DiffEntry.scan(treeWalk)) {
+                entries++;
+                if (entry.getChangeType() == DiffEntry.ChangeType.DELETE
+                        || (entry.getChangeType() == DiffEntry.ChangeType.ADD && entry.getNewPath().equals(path))) {
+                    candidates.add(entry);
+                }
+            }
+            GitMetrics.treeEntriesWalked(entries);
+        }
+        if (candidates.size() < 2) {
+            return null;
+        }
+        RenameDetector detector = new RenameDetector(repository);
+        detector.setRenameLimit(RENAME_LIMIT);
+        detector.setRenameScore(RENAME_SCORE);
+        detector.addAll(candidates);
+        for (DiffEntry entry : detector.compute(reader, NullProgressMonitor.INSTANCE)) {
+            if (entry.getChangeType() == DiffEntry.ChangeType.RENAME && entry.getNewPath().equals(path)) {
+                return entry.getOldPath();
+            }
+        }
+        return null;
+    }
+
+    private static boolean exists(ObjectReader reader, String path, RevTree tree) throws IOException {
+        try (TreeWalk treeWalk = TreeWalk.forPath(reader, path, tree)) {
+            return treeWalk != null && !treeWalk.isSubtree();
+        }
+    }
+}
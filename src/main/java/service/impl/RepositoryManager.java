@@ -0,0 +1,293 @@
+package service.impl;
+
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.PropertiesUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * @ClassName RepositoryManager
+ * @Description 本地仓库句柄管理：每个本地路径只打开一个共享的Repository，可多线程共用，
+ *              ObjectReader / RevWalk 由每次操作自行创建；
+ *              打开的仓库按最近使用排序，超过个数或估算内存上限时关闭最久未用的，空闲超时的仓库也会关闭，下次使用时重新打开
+ * @Author jinym
+ **/
+public class RepositoryManager {
+
+    private static final RepositoryManager INSTANCE = new RepositoryManager();
+
+    // 每个打开的仓库的固定内存估算(配置、引用缓存等)
+    private static final long BASE_WEIGHT = 64 * 1024;
+
+    private Logger log = LoggerFactory.getLogger(RepositoryManager.class);
+
+    // 同时打开的仓库个数上限
+    private final int maxOpen = PropertiesUtils.getInt("gitlab.maxOpenRepositories", 64);
+
+    // 打开的仓库估算内存上限(pack索引、暂存区)
+    private final long maxBytes = PropertiesUtils.getBytes("gitlab.maxRepositoryMemory", 512L * 1024 * 1024);
+
+    // 空闲超过该时间的仓库被关闭，小于等于0时不关闭
+    private final long idleMillis = PropertiesUtils.getLong("gitlab.repositoryIdleMillis", 10 * 60 * 1000L);
+
+    // 工作目录 -> 共享仓库，accessOrder=true，迭代顺序即最近最少使用顺序
+    private final LinkedHashMap<File, Handle> repositories = new LinkedHashMap<>(16, 0.75f, true);
+
+    // 打开的仓库估算占用的内存
+    private long bytes = 0;
+
+    // 工作目录 -> 写锁，同一仓库的写操作(提交、pull、上传、删除)串行执行
+    private final ConcurrentHashMap<File, ReentrantLock> writeLocks = new ConcurrentHashMap<>();
+
+    // 仓库被关闭(淘汰、空闲、释放)时的回调，参数为工作目录
+    private final List<Consumer<File>> evictionListeners = new CopyOnWriteArrayList<>();
+
+    private volatile boolean windowCacheInstalled = false;
+
+    // 已安装的WindowCache窗口大小，用于估算pack读取字节数
+    private volatile int packedGitWindowSize = new WindowCacheConfig().getPackedGitWindowSize();
+
+    private final AtomicBoolean sweeping = new AtomicBoolean(false);
+
+    private RepositoryManager() {
+    }
+
+    public static RepositoryManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 获取本地路径对应的共享仓库，未打开或已被淘汰时打开
+     * 调用方用完后必须close()，只会减少引用计数；仓库被淘汰时，正在执行的操作结束后才会真正关闭
+     *
+     * @param localPath git工作目录
+     */
+    public Repository acquire(String localPath) throws IOException {
+        installWindowCache();
+        startSweeper();
+        File workTree = new File(localPath).getCanonicalFile();
+        List<Map.Entry<File, Handle>> evicted;
+        Repository repository;
+        synchronized (this) {
+            Handle handle = repositories.get(workTree);
+            if (handle == null) {
+                handle = open(workTree);
+                repositories.put(workTree, handle);
+                bytes += handle.weight;
+            }
+            handle.lastUsed = System.currentTimeMillis();
+            repository = handle.repository;
+            repository.incrementOpen();
+            evicted = evictOverflow(workTree);
+        }
+        close(evicted, "超过上限");
+        return repository;
+    }
+
+    /**
+     * 本地路径对应仓库的写锁；读操作不加锁，每次读取只解析一次HEAD，
+     * 分支和暂存区的更新都是原子替换，读操作总是看到某次写入前或写入后的完整状态
+     */
+    public ReentrantLock writeLock(String localPath) {
+        File workTree;
+        try {
+            workTree = new File(localPath).getCanonicalFile();
+        } catch (IOException e) {
+            workTree = new File(localPath).getAbsoluteFile();
+        }
+        return writeLocks.computeIfAbsent(workTree, key -> new ReentrantLock());
+    }
+
+    /**
+     * 释放本地路径对应的共享仓库，正在执行的操作结束后才会真正关闭
+     */
+    public void release(String localPath) {
+        try {
+            File workTree = new File(localPath).getCanonicalFile();
+            Handle handle;
+            synchronized (this) {
+                handle = repositories.remove(workTree);
+                if (handle != null) {
+                    bytes -= handle.weight;
+                }
+            }
+            if (handle != null) {
+                close(Collections.singletonList(new AbstractMap.SimpleEntry<>(workTree, handle)), "释放");
+            }
+        } catch (IOException e) {
+            log.error("release()出错：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 关闭全部共享仓库
+     */
+    public void shutdown() {
+        List<File> workTrees;
+        synchronized (this) {
+            workTrees = new ArrayList<>(repositories.keySet());
+        }
+        for (File workTree : workTrees) {
+            release(workTree.getPath());
+        }
+    }
+
+    public void addEvictionListener(Consumer<File> listener) {
+        evictionListeners.add(listener);
+    }
+
+    /**
+     * WindowCache每次从pack读入的字节数
+     */
+    public int packedGitWindowSize() {
+        return packedGitWindowSize;
+    }
+
+    /**
+     * 当前打开的仓库个数
+     */
+    public synchronized int openCount() {
+        return repositories.size();
+    }
+
+    /**
+     * 当前打开的仓库估算占用的内存
+     */
+    public synchronized long estimatedBytes() {
+        return bytes;
+    }
+
+    /**
+     * 超过个数或内存上限时从最久未用的开始移除，刚获取的仓库不移除
+     */
+    private List<Map.Entry<File, Handle>> evictOverflow(File current) {
+        List<Map.Entry<File, Handle>> evicted = new ArrayList<>();
+        Iterator<Map.Entry<File, Handle>> iterator = repositories.entrySet().iterator();
+        while ((repositories.size() > maxOpen || bytes > maxBytes) && iterator.hasNext()) {
+            Map.Entry<File, Handle> eldest = iterator.next();
+            if (eldest.getKey().equals(current)) {
+                continue;
+            }
+            iterator.remove();
+            bytes -= eldest.getValue().weight;
+            evicted.add(new AbstractMap.SimpleEntry<>(eldest.getKey(), eldest.getValue()));
+        }
+        return evicted;
+    }
+
+    private void sweepIdle() {
+        long deadline = System.currentTimeMillis() - idleMillis;
+        List<Map.Entry<File, Handle>> idle = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<File, Handle>> iterator = repositories.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<File, Handle> entry = iterator.next();
+                if (entry.getValue().lastUsed < deadline) {
+                    iterator.remove();
+                    bytes -= entry.getValue().weight;
+                    idle.add(new AbstractMap.SimpleEntry<>(entry.getKey(), entry.getValue()));
+                }
+            }
+        }
+        close(idle, "空闲");
+    }
+
+    private void close(List<Map.Entry<File, Handle>> handles, String reason) {
+        for (Map.Entry<File, Handle> entry : handles) {
+            entry.getValue().repository.close();
+            log.info("本地仓库已关闭(" + reason + ")：" + entry.getKey());
+            for (Consumer<File> listener : evictionListeners) {
+                try {
+                    listener.accept(entry.getKey());
+                } catch (RuntimeException e) {
+                    log.error("仓库关闭回调出错：" + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void startSweeper() {
+        if (idleMillis <= 0 || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        long period = Math.max(1000L, idleMillis / 2);
+        GitExecutors.scheduler().scheduleWithFixedDelay(this::sweepIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private Handle open(File workTree) throws IOException {
+        Repository repository = new FileRepositoryBuilder()
+                .setWorkTree(workTree)
+                .setMustExist(true)
+                .build();
+        Handle handle = new Handle(repository, estimate(repository));
+        log.info("本地仓库已打开：" + workTree + "，估算内存：" + handle.weight / 1024 + "KB");
+        return handle;
+    }
+
+    /**
+     * 按pack索引和暂存区文件的大小估算仓库打开后常驻的内存
+     */
+    private static long estimate(Repository repository) {
+        long weight = BASE_WEIGHT;
+        File[] indexes = new File(repository.getDirectory(), "objects/pack").listFiles((dir, name) -> name.endsWith(".idx"));
+        if (indexes != null) {
+            for (File index : indexes) {
+                weight += index.length();
+            }
+        }
+        return weight + repository.getIndexFile().length();
+    }
+
+    private static class Handle {
+        final Repository repository;
+        final long weight;
+        volatile long lastUsed;
+
+        Handle(Repository repository, long weight) {
+            this.repository = repository;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * WindowCache是JGit全局的pack缓存，按gitlab.properties配置安装一次
+     */
+    private void installWindowCache() {
+        if (windowCacheInstalled) {
+            return;
+        }
+        synchronized (this) {
+            if (windowCacheInstalled) {
+                return;
+            }
+            WindowCacheConfig config = new WindowCacheConfig();
+            config.setPackedGitLimit(PropertiesUtils.getBytes("gitlab.packedGitLimit", config.getPackedGitLimit()));
+            config.setPackedGitWindowSize((int) PropertiesUtils.getBytes("gitlab.packedGitWindowSize", config.getPackedGitWindowSize()));
+            config.setPackedGitOpenFiles(PropertiesUtils.getInt("gitlab.packedGitOpenFiles", config.getPackedGitOpenFiles()));
+            config.setPackedGitMMAP(PropertiesUtils.getBoolean("gitlab.packedGitMMAP", config.isPackedGitMMAP()));
+            config.setDeltaBaseCacheLimit((int) PropertiesUtils.getBytes("gitlab.deltaBaseCacheLimit", config.getDeltaBaseCacheLimit()));
+            config.setStreamFileThreshold((int) PropertiesUtils.getBytes("gitlab.streamFileThreshold", config.getStreamFileThreshold()));
+            config.install();
+            packedGitWindowSize = config.getPackedGitWindowSize();
+            windowCacheInstalled = true;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package service.impl;
+
+import entity.RepositoryConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import service.JGitService;
+import utils.PropertiesUtils;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @ClassName RepositoryRegistry
+ * @Description 多仓库注册表：仓库名 -> 配置 -> 该仓库的JGitService，服务在首次使用时创建，没有调用在进行且空闲超时后关闭；
+ *              仓库配置来自gitlab.repos列出的仓库(gitlab.repo.<仓库名>.*)，以及gitlab.reposRoot下已clone的目录
+ * @Author jinym
+ **/
+public class RepositoryRegistry implements AutoCloseable {
+
+    private static final RepositoryRegistry INSTANCE = new RepositoryRegistry();
+
+    private Logger log = LoggerFactory.getLogger(RepositoryRegistry.class);
+
+    // 服务空闲超过该时间后关闭，与打开的仓库使用同一配置
+    private final long idleMillis = PropertiesUtils.getLong("gitlab.repositoryIdleMillis", 10 * 60 * 1000L);
+
+    private final Map<String, RepositoryConfig> configs = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, ServiceHolder> services = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean sweeping = new AtomicBoolean(false);
+
+    private RepositoryRegistry() {
+        load();
+    }
+
+    public static RepositoryRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * gitlab.url、gitlab.localPath等单仓库配置
+     */
+    public static RepositoryConfig defaultConfig() {
+        RepositoryConfig config = new RepositoryConfig();
+        config.setName(PropertiesUtils.getProperty("gitlab.defaultRepo", "default"));
+        config.setUrl(PropertiesUtils.getProperty("gitlab.url"));
+        config.setLocalPath(PropertiesUtils.getProperty("gitlab.localPath"));
+        config.setBranch(PropertiesUtils.getProperty("gitlab.branch"));
+        config.setUserName(PropertiesUtils.getProperty("gitlab.userName"));
+        config.setPassword(PropertiesUtils.getProperty("gitlab.password"));
+        config.setSyncIntervalMillis(PropertiesUtils.getLong("gitlab.syncIntervalMillis", 60 * 1000L));
+        return config;
+    }
+
+    /**
+     * 已注册的仓库名
+     */
+    public Set<String> names() {
+        return Collections.unmodifiableSet(new TreeSet<>(configs.keySet()));
+    }
+
+    public RepositoryConfig getConfig(String name) {
+        return configs.get(name);
+    }
+
+    /**
+     * 注册或替换一个仓库，替换时关闭旧的服务
+     */
+    public void register(RepositoryConfig config) {
+        configs.put(config.getName(), config);
+        remove(config.getName());
+    }
+
+    /**
+     * 获取仓库对应的服务，首次使用时创建；调用方每次使用时获取，不要长期持有。
+     * 返回的服务在调用期间(返回CompletableFuture时直到其完成)计为使用中，使用中的服务不会因空闲被关闭
+     *
+     * @param name 仓库名
+     */
+    public JGitService service(String name) {
+        RepositoryConfig config = configs.get(name);
+        if (config == null) {
+            throw new IllegalArgumentException("仓库未注册：" + name);
+        }
+        startSweeper();
+        while (true) {
+            ServiceHolder holder = services.computeIfAbsent(name, key -> new ServiceHolder(key,
+                    MeteredJGitService.wrap(new JGitServiceImpl(config), key)));
+            if (holder.touch()) {
+                return holder.leased;
+            }
+            // 刚被空闲清理关闭，重新创建
+            services.remove(name, holder);
+        }
+    }
+
+    /**
+     * 预先打开仓库并创建服务，避免第一个请求承担打开的开销
+     */
+    public void warm(String name) {
+        try {
+            RepositoryManager.getInstance().acquire(configs.get(name).getLocalPath()).close();
+            service(name);
+        } catch (Exception e) {
+            log.error("warm()出错：" + name + "，" + e.getMessage());
+        }
+    }
+
+    /**
+     * 关闭全部服务和仓库
+     */
+    @Override
+    public void close() {
+        for (String name : new ArrayList<>(services.keySet())) {
+            remove(name);
+        }
+        RepositoryManager.getInstance().shutdown();
+    }
+
+    /**
+     * 关闭并移除仓库的服务。关闭在该仓库名的锁内进行，完成前同名的新服务不会创建，
+     * 旧服务注销JMX时不会注销新服务以同一名称注册的统计
+     */
+    private void remove(String name) {
+        services.computeIfPresent(name, (key, holder) -> {
+            holder.close();
+            return null;
+        });
+    }
+
+    private void load() {
+        RepositoryConfig defaults = defaultConfig();
+        if (defaults.getLocalPath() != null) {
+            configs.put(defaults.getName(), defaults);
+        }
+        String repos = PropertiesUtils.getProperty("gitlab.repos", "");
+        for (String name : repos.split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            String prefix = "gitlab.repo." + name + ".";
+            RepositoryConfig config = new RepositoryConfig();
+            config.setName(name);
+            config.setUrl(PropertiesUtils.getProperty(prefix + "url"));
+            config.setLocalPath(PropertiesUtils.getProperty(prefix + "localPath", rootPath(name)));
+            config.setBranch(PropertiesUtils.getProperty(prefix + "branch", defaults.getBranch()));
+            config.setUserName(PropertiesUtils.getProperty(prefix + "userName", defaults.getUserName()));
+            config.setPassword(PropertiesUtils.getProperty(prefix + "password", defaults.getPassword()));
+            config.setSyncIntervalMillis(PropertiesUtils.getLong(prefix + "syncIntervalMillis", defaults.getSyncIntervalMillis()));
+            if (config.getLocalPath() == null) {
+                log.error("仓库" + name + "未配置localPath，且未配置gitlab.reposRoot");
+                continue;
+            }
+            configs.put(name, config);
+        }
+        scan(defaults);
+        log.info("已注册仓库：" + configs.size() + "个");
+    }
+
+    /**
+     * gitlab.reposRoot下包含.git的子目录按目录名注册，已配置的仓库名不覆盖；这些仓库没有单独配置，不在后台同步
+     */
+    private void scan(RepositoryConfig defaults) {
+        String root = PropertiesUtils.getProperty("gitlab.reposRoot", null);
+        if (root == null) {
+            return;
+        }
+        File[] dirs = new File(root).listFiles(file -> new File(file, ".git").exists());
+        if (dirs == null) {
+            return;
+        }
+        for (File dir : dirs) {
+            if (configs.containsKey(dir.getName())) {
+                continue;
+            }
+            RepositoryConfig config = new RepositoryConfig();
+            config.setName(dir.getName());
+            config.setLocalPath(dir.getPath());
+            config.setBranch(defaults.getBranch());
+            config.setUserName(defaults.getUserName());
+            config.setPassword(defaults.getPassword());
+            configs.put(dir.getName(), config);
+        }
+    }
+
+    private static String rootPath(String name) {
+        String root = PropertiesUtils.getProperty("gitlab.reposRoot", null);
+        return root == null ? null : new File(root, name).getPath();
+    }
+
+    private void sweepIdle() {
+        long deadline = System.currentTimeMillis() - idleMillis;
+        for (String name : new ArrayList<>(services.keySet())) {
+            // 与remove()相同，在该仓库名的锁内标记关闭、关闭服务后再移除
+            services.computeIfPresent(name, (key, holder) -> {
+                if (!holder.closeIfIdle(deadline)) {
+                    return holder;
+                }
+                holder.service.close();
+                log.info("仓库服务已关闭(空闲)：" + key);
+                return null;
+            });
+        }
+    }
+
+    private void startSweeper() {
+        if (idleMillis <= 0 || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        long period = Math.max(1000L, idleMillis / 2);
+        GitExecutors.scheduler().scheduleWithFixedDelay(this::sweepIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 一个仓库的服务及其使用计数：交给调用方的是计数代理，每次调用期间计为使用中
+     */
+    private static class ServiceHolder implements InvocationHandler {
+        final String name;
+        final JGitService service;
+        final JGitService leased;
+        private int inUse = 0;
+        private long lastUsed = System.currentTimeMillis();
+        private boolean closed = false;
+
+        ServiceHolder(String name, JGitService service) {
+            this.name = name;
+            this.service = service;
+            this.leased = (JGitService) Proxy.newProxyInstance(JGitService.class.getClassLoader(),
+                    new Class<?>[]{JGitService.class}, this);
+        }
+
+        /**
+         * @return 已关闭时返回false
+         */
+        synchronized boolean touch() {
+            lastUsed = System.currentTimeMillis();
+            return !closed;
+        }
+
+        synchronized boolean acquire() {
+            if (closed) {
+                return false;
+            }
+            inUse++;
+            lastUsed = System.currentTimeMillis();
+            return true;
+        }
+
+        synchronized void release() {
+            inUse--;
+            lastUsed = System.currentTimeMillis();
+        }
+
+        /**
+         * 没有调用在进行且空闲超过期限时标记为关闭
+         */
+        synchronized boolean closeIfIdle(long deadline) {
+            if (closed || inUse > 0 || lastUsed >= deadline) {
+                return false;
+            }
+            closed = true;
+            return true;
+        }
+
+        void close() {
+            synchronized (this) {
+                closed = true;
+            }
+            service.close();
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(service, args);
+            }
+            if ("close".equals(method.getName())) {
+                // 服务由注册表共享和关闭，调用方的close()(如try-with-resources)不关闭服务
+                return null;
+            }
+            if (!acquire()) {
+                throw new IllegalStateException("仓库服务已关闭：" + name);
+            }
+            boolean released = false;
+            try {
+                Object result = method.invoke(service, args);
+                if (result instanceof CompletableFuture) {
+                    // 异步操作完成后才释放
+                    ((CompletableFuture<?>) result).whenComplete((value, error) -> release());
+                    released = true;
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                if (!released) {
+                    release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package service.impl;
+
+import entity.ArchiveFormat;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.util.RawParseUtils;
+import utils.PathUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @ClassName SnapshotArchiver
+ * @Description 目录快照打包：一次遍历指定版本的tree得到目录下的全部文件，按对象在pack文件中的位置排序后依次读取，
+ *              大的目录也是顺序读盘；内容流式写入zip或tar，entry名保留相对git库的路径
+ * @Author jinym
+ **/
+public class SnapshotArchiver {
+
+    // 文件和可执行文件在tar中的类型和权限
+    private static final int FILE_MODE = 0100644;
+
+    private static final int EXECUTABLE_MODE = 0100755;
+
+    private final Repository repository;
+
+    public SnapshotArchiver(Repository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * 写出快照
+     *
+     * @param commitId     版本号
+     * @param relativePath 相对git库的目录或文件路径，""为整个版本
+     * @param format       打包格式
+     * @param out          输出流，由调用方关闭
+     * @return 写出的文件数
+     * @throws FileNotFoundException 路径下没有文件，此时不写出任何内容
+     */
+    public int write(ObjectId commitId, String relativePath, ArchiveFormat format, OutputStream out) throws IOException {
+        String path = PathUtils.normalize(relativePath);
+        RevCommit commit;
+        List<Entry> entries = new ArrayList<>();
+        try (RevWalk walk = new RevWalk(repository); TreeWalk treeWalk = new TreeWalk(walk.getObjectReader())) {
+            commit = walk.parseCommit(commitId);
+            treeWalk.addTree(commit.getTree());
+            if (!path.isEmpty()) {
+                treeWalk.setFilter(PathFilter.create(path));
+            }
+            treeWalk.setRecursive(true);
+            long walked = 0;
+            while (treeWalk.next()) {
+                walked++;
+                FileMode mode = treeWalk.getFileMode(0);
+                if (mode != FileMode.GITLINK) {
+                    entries.add(new Entry(treeWalk.getPathString(), treeWalk.getObjectId(0), mode));
+                }
+            }
+            GitMetrics.treeEntriesWalked(walked);
+        }
+        if (entries.isEmpty()) {
+            throw new FileNotFoundException("版本号：" + commitId.name() + "在路径" + path + "下无文件");
+        }
+        PackOrder.sort(repository, entries, entry -> entry.blobId);
+        switch (format) {
+            case ZIP:
+                writeZip(entries, out);
+                break;
+            case TGZ:
+                GZIPOutputStream gzip = new GZIPOutputStream(new FilterOutputStream(out) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        flush();
+                    }
+                }, 64 * 1024);
+                try {
+                    writeTar(entries, commit.getCommitterIdent().getWhen(), gzip);
+                } finally {
+                    // 写出gzip尾部，不关闭调用方的输出流
+                    gzip.close();
+                }
+                break;
+            default:
+                writeTar(entries, commit.getCommitterIdent().getWhen(), out);
+                break;
+        }
+        return entries.size();
+    }
+
+    /**
+     * zip由ZipPackager并行压缩，按排序后的顺序提交，压缩线程也大致按pack顺序读取
+     */
+    private void writeZip(List<Entry> entries, OutputStream out) throws IOException {
+        ZipPackager packager = new ZipPackager();
+        for (Entry entry : entries) {
+            packager.add(entry.path, () -> openStream(entry));
+        }
+        packager.writeTo(out);
+    }
+
+    private void writeTar(List<Entry> entries, Date modified, OutputStream out) throws IOException {
+        // 关闭tar以写出结束块，但不关闭调用方的输出流
+        try (TarArchiveOutputStream tarOut = new TarArchiveOutputStream(new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        }, "UTF-8");
+             ObjectReader reader = repository.newObjectReader()) {
+            tarOut.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            tarOut.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+            long bytes = 0;
+            for (Entry entry : entries) {
+                ObjectLoader loader = reader.open(entry.blobId, Constants.OBJ_BLOB);
+                bytes += loader.getSize();
+                TarArchiveEntry tarEntry;
+                if (entry.mode == FileMode.SYMLINK) {
+                    tarEntry = new TarArchiveEntry(entry.path, TarConstants.LF_SYMLINK);
+                    tarEntry.setLinkName(RawParseUtils.decode(loader.getCachedBytes()));
+                } else {
+                    tarEntry = new TarArchiveEntry(entry.path);
+                    tarEntry.setMode(entry.mode == FileMode.EXECUTABLE_FILE ? EXECUTABLE_MODE : FILE_MODE);
+                    tarEntry.setSize(loader.getSize());
+                }
+                tarEntry.setModTime(modified);
+                tarOut.putArchiveEntry(tarEntry);
+                if (entry.mode != FileMode.SYMLINK) {
+                    loader.copyTo(tarOut);
+                }
+                tarOut.closeArchiveEntry();
+            }
+            tarOut.finish();
+            GitMetrics.objectsLoaded(entries.size(), bytes);
+        }
+    }
+
+    /**
+     * 在压缩线程中打开blob，每次使用独立的ObjectReader，流关闭时一起关闭；不放入BlobCache，避免整个目录挤掉常用文件
+     */
+    private InputStream openStream(Entry entry) throws IOException {
+        ObjectReader reader = repository.newObjectReader();
+        try {
+            ObjectLoader loader = reader.open(entry.blobId, Constants.OBJ_BLOB);
+            GitMetrics.objectsLoaded(1, loader.getSize());
+            if (!loader.isLarge()) {
+                return new ByteArrayInputStream(loader.getCachedBytes());
+            }
+            ObjectReader streamReader = reader;
+            reader = null;
+            return new FilterInputStream(loader.openStream()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        streamReader.close();
+                    }
+                }
+            };
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    private static class Entry {
+        final String path;
+        final ObjectId blobId;
+        final FileMode mode;
+
+        Entry(String path, ObjectId blobId, FileMode mode) {
+            this.path = path;
+            this.blobId = blobId;
+            this.mode = mode;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package service.impl;
+
+/**
+ * 进程内全部仓库的对象库读取统计，JMX名称为jgit:type=Storage
+ */
+public interface StorageMetricsMXBean {
+
+    /**
+     * 从pack文件读入WindowCache的字节数(按读入的窗口数估算)
+     */
+    long getPackBytesRead();
+
+    long getPackWindowHits();
+
+    long getPackWindowMisses();
+
+    /**
+     * 读取(解压)的对象数
+     */
+    long getObjectsInflated();
+
+    /**
+     * 读取(解压)的对象字节数
+     */
+    long getBytesInflated();
+
+    /**
+     * tree遍历经过的条目数
+     */
+    long getTreeEntriesWalked();
+
+    /**
+     * 当前打开的仓库数
+     */
+    int getOpenRepositories();
+
+    /**
+     * 打开的仓库估算占用的内存字节数
+     */
+    long getRepositoryBytes();
+}
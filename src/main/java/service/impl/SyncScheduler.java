@@ -0,0 +1,256 @@
+package service.impl;
+
+import entity.SyncStatus;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeCommand;
+import org.eclipse.jgit.api.MergeResult;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.PropertiesUtils;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * @ClassName SyncScheduler
+ * @Description 后台同步：按间隔(带随机抖动)fetch远程分支，工作区没有未提交的修改时快进到远程版本，HEAD变化后通知HeadListener；
+ *              本地有未推送的提交且远程分支也有新提交(已分叉)时不改变本地版本，只在SyncStatus中报告，由调用方决定如何合并；
+ *              失败时按指数退避延长间隔，用户请求不再等待网络
+ * @Author jinym
+ **/
+public class SyncScheduler implements AutoCloseable {
+
+    // 间隔的随机抖动比例，避免多个仓库同时拉取
+    private static final double JITTER = 0.2;
+
+    private Logger log = LoggerFactory.getLogger(SyncScheduler.class);
+
+    // 同步间隔，小于等于0时不在后台同步
+    private final long intervalMillis;
+
+    // 连续失败时退避的最长间隔
+    private final long maxBackoffMillis = PropertiesUtils.getLong("gitlab.syncMaxBackoffMillis", 10 * 60 * 1000L);
+
+    private final Callable<Repository> repositorySupplier;
+
+    private final String localPath;
+
+    private final String branch;
+
+    private final CredentialsProvider credentials;
+
+    private final List<HeadListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile SyncStatus status = new SyncStatus(null, null, null, null, 0, 0, false, 0, 0, null);
+
+    private volatile ScheduledFuture<?> next = null;
+
+    private volatile boolean closed = false;
+
+    private volatile Runnable pusher = null;
+
+    private Date lastSuccessTime = null;
+
+    private int consecutiveFailures = 0;
+
+    private long totalFailures = 0;
+
+    /**
+     * @param repositorySupplier 获取仓库，用完会close()
+     * @param localPath          本地git路径，用于获取仓库写锁
+     * @param branch             同步的分支
+     * @param credentials        fetch使用的账户
+     * @param intervalMillis     后台同步间隔，小于等于0时只在调用syncNow()时同步
+     */
+    public SyncScheduler(Callable<Repository> repositorySupplier, String localPath, String branch,
+                         CredentialsProvider credentials, long intervalMillis) {
+        this.repositorySupplier = repositorySupplier;
+        this.localPath = localPath;
+        this.branch = branch;
+        this.credentials = credentials;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public void addListener(HeadListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 同步后本地有远程没有的提交(之前的推送失败)且没有落后远程时调用，由提交队列推送
+     */
+    public void setPusher(Runnable pusher) {
+        this.pusher = pusher;
+    }
+
+    /**
+     * 开始后台同步，同步间隔小于等于0时不启动
+     */
+    public void start() {
+        if (intervalMillis > 0 && next == null) {
+            schedule(jittered(intervalMillis));
+        }
+    }
+
+    public SyncStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * 立即同步一次，与后台同步互斥
+     */
+    public synchronized SyncStatus syncNow() {
+        Date now = new Date();
+        String localHead = null;
+        String remoteHead = null;
+        int behind = 0;
+        int ahead = 0;
+        boolean dirty = false;
+        String error = null;
+        try (Repository repository = repositorySupplier.call()) {
+            Git.wrap(repository).fetch().setRemote(Constants.DEFAULT_REMOTE_NAME)
+                    .setCredentialsProvider(credentials).call();
+            Ref remoteRef = repository.exactRef(Constants.R_REMOTES + Constants.DEFAULT_REMOTE_NAME + "/" + branch);
+            if (remoteRef == null || remoteRef.getObjectId() == null) {
+                throw new IllegalStateException("远程分支不存在：" + branch);
+            }
+            ObjectId remote = remoteRef.getObjectId();
+            remoteHead = remote.name();
+            ObjectId oldHead;
+            ObjectId newHead;
+            Lock lock = RepositoryManager.getInstance().writeLock(localPath);
+            lock.lock();
+            try {
+                oldHead = repository.resolve(Constants.HEAD);
+                newHead = oldHead;
+                behind = count(repository, remote, oldHead);
+                ahead = count(repository, oldHead, remote);
+                // 已分叉时只报告，不合并也不回退，本地版本和工作区保持不变
+                if (behind > 0 && ahead == 0) {
+                    // 暂存区中尚未提交的修改也算作有修改
+                    if (!new WorkingTreeStatus(repository).scan(null).isEmpty()) {
+                        dirty = true;
+                    } else {
+                        MergeResult result = Git.wrap(repository).merge().include(remoteRef)
+                                .setFastForward(MergeCommand.FastForwardMode.FF_ONLY).call();
+                        if (!result.getMergeStatus().isSuccessful()) {
+                            throw new IllegalStateException("快进失败：" + result.getMergeStatus());
+                        }
+                        newHead = repository.resolve(Constants.HEAD);
+                        behind = 0;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            localHead = newHead == null ? null : newHead.name();
+            if (newHead != null && !newHead.equals(oldHead)) {
+                log.info("同步到新版本：" + newHead.name());
+                for (HeadListener listener : listeners) {
+                    try {
+                        listener.headChanged(repository, oldHead, newHead);
+                    } catch (Exception e) {
+                        log.error("HEAD变化回调出错：" + e.getMessage());
+                    }
+                }
+            }
+            if (behind > 0 && ahead > 0) {
+                log.error("本地有未推送的提交，且远程分支有新提交，未同步：本地领先" + ahead + "个提交，落后" + behind + "个提交");
+            }
+            consecutiveFailures = 0;
+            if (behind == 0) {
+                // 工作区有修改或已分叉而未快进时不算成功，落后时长继续增加
+                lastSuccessTime = now;
+            }
+        } catch (Exception e) {
+            log.error("后台同步出错：" + e.getMessage());
+            error = e.getMessage();
+            consecutiveFailures++;
+            totalFailures++;
+        }
+        status = new SyncStatus(now, lastSuccessTime, localHead, remoteHead, behind, ahead, dirty,
+                consecutiveFailures, totalFailures, error);
+        Runnable push = pusher;
+        if (error == null && ahead > 0 && behind == 0 && push != null) {
+            // 之前推送失败的提交交给推送线程
+            push.run();
+        }
+        return status;
+    }
+
+    /**
+     * 后台尽快同步一次，推送被拒绝(远程有新提交)时调用，更新落后和分叉状态
+     */
+    public void syncSoon() {
+        if (!closed) {
+            GitExecutors.syncPool().execute(this::syncNow);
+        }
+    }
+
+    /**
+     * from可达而exclude不可达的提交数
+     */
+    private static int count(Repository repository, ObjectId from, ObjectId exclude) throws Exception {
+        if (from == null) {
+            return 0;
+        }
+        if (exclude == null) {
+            return 1;
+        }
+        try (RevWalk walk = new RevWalk(repository)) {
+            walk.setRetainBody(false);
+            walk.markStart(walk.parseCommit(from));
+            walk.markUninteresting(walk.parseCommit(exclude));
+            int count = 0;
+            while (walk.next() != null) {
+                count++;
+            }
+            return count;
+        }
+    }
+
+    private void runScheduled() {
+        if (closed) {
+            return;
+        }
+        SyncStatus result = syncNow();
+        long delay = intervalMillis;
+        if (result.getConsecutiveFailures() > 0) {
+            delay = Math.min(maxBackoffMillis, intervalMillis << Math.min(result.getConsecutiveFailures(), 16));
+        }
+        schedule(jittered(delay));
+    }
+
+    private void schedule(long delayMillis) {
+        if (!closed) {
+            // fetch等待网络，在同步线程池中执行，不占用调度线程和异步接口的线程
+            next = GitExecutors.scheduler().schedule(() -> GitExecutors.syncPool().execute(this::runScheduled),
+                    delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static long jittered(long delayMillis) {
+        double factor = 1 + (ThreadLocalRandom.current().nextDouble() * 2 - 1) * JITTER;
+        return Math.max(1L, (long) (delayMillis * factor));
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        ScheduledFuture<?> scheduled = next;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package service.impl;
+
+import entity.TreeItemVO;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import utils.PathUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * @ClassName TreeBrowser
+ * @Description 按层级分页读取目录：直接从提交的tree读取目录条目，只遍历请求的那一层，
+ *              当前版本时叠加该层的工作区状态
+ * @Author jinym
+ **/
+public class TreeBrowser {
+
+    private final Repository repository;
+
+    public TreeBrowser(Repository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * 读取目录的子节点
+     *
+     * @param commitId 版本号，为null时读取当前版本(HEAD + 工作区)
+     * @param path     目录相对路径，""为根目录
+     * @param depth    展开层数，1只返回直接子节点
+     * @param offset   第一层跳过的条目数
+     * @param limit    每层最多返回的条目数
+     */
+    public List<TreeItemVO> list(String commitId, String path, int depth, int offset, int limit) throws IOException {
+        boolean workTree = commitId == null;
+        try (RevWalk walk = new RevWalk(repository)) {
+            ObjectId id = repository.resolve(workTree ? Constants.HEAD : commitId);
+            if (id == null && !workTree) {
+                throw new IOException("版本号不存在：" + commitId);
+            }
+            RevTree tree = id == null ? null : walk.parseCommit(id).getTree();
+            return list(walk, tree, workTree, PathUtils.normalize(path), depth, offset, limit);
+        }
+    }
+
+    /**
+     * 一次TreeWalk(当前版本时只读取一次暂存区)读取全部展开的层级：TreeWalk按先序输出，
+     * 进入子目录后紧接着输出其子节点，用栈记录正在展开的目录
+     */
+    private List<TreeItemVO> list(RevWalk walk, RevTree tree, boolean workTree, String dir,
+                                  int depth, int offset, int limit) throws IOException {
+        List<TreeItemVO> items = new ArrayList<>();
+        Deque<TreeItemVO> expanding = new ArrayDeque<>();
+        try (TreeWalk treeWalk = new TreeWalk(repository, walk.getObjectReader())) {
+            if (workTree) {
+                WorkingTreeStatus.addTrees(repository, treeWalk, tree);
+            } else {
+                treeWalk.addTree(tree);
+            }
+            if (!dir.isEmpty()) {
+                treeWalk.setFilter(PathFilter.create(dir));
+            }
+            // 请求目录的子节点所在的层级
+            int level = dir.isEmpty() ? 0 : dir.split("/").length;
+            int skipped = 0;
+            long entries = 0;
+            while (treeWalk.next()) {
+                entries++;
+                if (treeWalk.getDepth() < level) {
+                    // 请求目录本身及其上级目录，只沿路径下降
+                    if (treeWalk.isSubtree()) {
+                        treeWalk.enterSubtree();
+                    }
+                    continue;
+                }
+                // 相对请求目录的层级，离开已展开的目录
+                int relative = treeWalk.getDepth() - level;
+                while (expanding.size() > relative) {
+                    expanding.pop();
+                }
+                if (workTree && WorkingTreeStatus.isUntrackedIgnored(treeWalk)) {
+                    continue;
+                }
+                List<TreeItemVO> siblings = relative == 0 ? items : expanding.peek().getChildren();
+                if (relative == 0) {
+                    if (skipped < offset) {
+                        skipped++;
+                        continue;
+                    }
+                    if (items.size() >= limit) {
+                        break;
+                    }
+                } else if (siblings.size() >= limit) {
+                    // 该目录已满，跳过其余条目，不进入子目录
+                    continue;
+                }
+                String relativePath = treeWalk.getPathString();
+                TreeItemVO treeItemVO = new TreeItemVO();
+                treeItemVO.setFileName(treeWalk.getNameString());
+                treeItemVO.setRelativePath(relativePath);
+                if (workTree) {
+                    treeItemVO.setFilePath(new File(repository.getWorkTree(), relativePath).getAbsolutePath());
+                }
+                if (treeWalk.isSubtree()) {
+                    treeItemVO.setType("dir");
+                    if (relative + 1 < depth) {
+                        treeItemVO.setChildren(new ArrayList<TreeItemVO>());
+                        expanding.push(treeItemVO);
+                        treeWalk.enterSubtree();
+                    }
+                } else {
+                    treeItemVO.setType("file");
+                    if (workTree) {
+                        treeItemVO.setStatus(WorkingTreeStatus.status(treeWalk));
+                    }
+                }
+                siblings.add(treeItemVO);
+            }
+            GitMetrics.treeEntriesWalked(entries);
+        }
+        return items;
+    }
+}
@@ -0,0 +1,134 @@
+package service.impl;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import utils.PathUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @ClassName UploadWriter
+ * @Description 上传文件一次写入：读取上传内容的同时写入临时文件和对象库，得到blob id后更新暂存区条目，
+ *              之后的状态查询和提交不需要再读取、计算文件内容；内容与暂存区相同时不替换工作区文件
+ * @Author jinym
+ **/
+public class UploadWriter {
+
+    private final Repository repository;
+
+    public UploadWriter(Repository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * 写入上传的文件并暂存，调用方需持有仓库写锁
+     *
+     * @param source       上传内容，由调用方关闭
+     * @param size         内容字节数
+     * @param relativePath 相对git库的文件路径
+     * @return 文件内容有变化时返回true
+     */
+    public boolean write(ReadableByteChannel source, long size, String relativePath) throws IOException {
+        String path = PathUtils.normalize(relativePath);
+        File dest = new File(repository.getWorkTree(), path);
+        File tmp = File.createTempFile("upload_", ".tmp", repository.getDirectory());
+        try {
+            ObjectId blobId;
+            try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE);
+                 ObjectInserter inserter = repository.newObjectInserter()) {
+                blobId = inserter.insert(Constants.OBJ_BLOB, size, new TeeInputStream(source, out));
+                inserter.flush();
+            }
+            DirCache index = repository.lockDirCache();
+            try {
+                DirCacheEntry current = index.getEntry(path);
+                if (current != null && current.getObjectId().equals(blobId) && WorkingTreeStatus.isClean(current, dest)) {
+                    // 内容未变化，保留原文件和暂存区条目
+                    return false;
+                }
+                File parent = dest.getParentFile();
+                if (!parent.exists()) {
+                    parent.mkdirs();
+                }
+                move(tmp, dest);
+                DirCacheEntry entry = new DirCacheEntry(path);
+                entry.setObjectId(blobId);
+                entry.setFileMode(current != null && current.getFileMode() == FileMode.EXECUTABLE_FILE
+                        ? FileMode.EXECUTABLE_FILE : FileMode.REGULAR_FILE);
+                entry.setLength(size);
+                entry.setLastModified(Files.getLastModifiedTime(dest.toPath()).toInstant());
+                DirCacheEditor editor = index.editor();
+                editor.add(new DirCacheEditor.PathEdit(entry) {
+                    @Override
+                    public void apply(DirCacheEntry ent) {
+                        ent.copyMetaData(entry);
+                        ent.setObjectId(entry.getObjectId());
+                    }
+                });
+                editor.finish();
+                index.write();
+                index.commit();
+                return true;
+            } finally {
+                index.unlock();
+            }
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    private static void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 对象库读取上传内容时，把读到的字节同时写入临时文件
+     */
+    private static class TeeInputStream extends InputStream {
+        private final ReadableByteChannel source;
+        private final FileChannel target;
+
+        TeeInputStream(ReadableByteChannel source, FileChannel target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n <= 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = source.read(ByteBuffer.wrap(b, off, len));
+            if (n > 0) {
+                ByteBuffer written = ByteBuffer.wrap(b, off, n);
+                while (written.hasRemaining()) {
+                    target.write(written);
+                }
+            }
+            return n;
+        }
+    }
+}
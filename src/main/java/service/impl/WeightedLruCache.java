@@ -0,0 +1,78 @@
+package service.impl;
+
+import entity.CacheStats;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * @ClassName WeightedLruCache
+ * @Description 按估算字节数限制容量的LRU缓存，只用于内容不可变的键(如tree id、blob id)，不需要失效，只需淘汰
+ * @Author jinym
+ **/
+public class WeightedLruCache<K, V> {
+
+    private final long maxBytes;
+
+    private final ToLongFunction<V> weigher;
+
+    // accessOrder=true，迭代顺序即最近最少使用顺序
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes = 0;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    private long evictions = 0;
+
+    /**
+     * @param maxBytes 字节上限，小于等于0时不缓存
+     * @param weigher  估算单个值占用的字节数
+     */
+    public WeightedLruCache(long maxBytes, ToLongFunction<V> weigher) {
+        this.maxBytes = maxBytes;
+        this.weigher = weigher;
+    }
+
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        long weight = weigher.applyAsLong(value);
+        if (weight > maxBytes) {
+            return;
+        }
+        V old = entries.put(key, value);
+        if (old != null) {
+            bytes -= weigher.applyAsLong(old);
+        }
+        bytes += weight;
+        Iterator<Map.Entry<K, V>> iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<K, V> eldest = iterator.next();
+            bytes -= weigher.applyAsLong(eldest.getValue());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized CacheStats stats() {
+        return new CacheStats(hits, misses, evictions, entries.size(), bytes, maxBytes);
+    }
+}
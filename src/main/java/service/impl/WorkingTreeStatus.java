@@ -0,0 +1,145 @@
+package service.impl;
+
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @ClassName WorkingTreeStatus
+ * @Description 工作区状态引擎：一次TreeWalk同时遍历HEAD、DirCache和工作区，得到整棵树(或子树)所有文件的状态，
+ *              代替对每个文件单独执行git diff
+ * @Author jinym
+ **/
+public class WorkingTreeStatus {
+
+    public static final String NONE = "NONE";
+    public static final String ADD = "ADD";
+    public static final String DELETE = "DELETE";
+    public static final String MODIFY = "MODIFY";
+
+    private static final int HEAD = 0;
+    private static final int INDEX = 1;
+    private static final int WORK_TREE = 2;
+
+    private final Repository repository;
+
+    public WorkingTreeStatus(Repository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * 计算文件状态
+     *
+     * @param relativePaths 相对git库的文件或目录路径，为空时计算整个工作区
+     * @return <相对路径，状态>，只包含有变化的文件，未包含的文件即为NONE
+     */
+    public Map<String, String> scan(Collection<String> relativePaths) throws IOException {
+        Map<String, String> statusMap = new HashMap<>();
+        try (TreeWalk walk = new TreeWalk(repository)) {
+            addTrees(repository, walk, repository.resolve(Constants.HEAD + "^{tree}"));
+            if (relativePaths != null && !relativePaths.isEmpty()) {
+                walk.setFilter(PathFilterGroup.createFromStrings(relativePaths));
+            }
+            long entries = 0;
+            while (walk.next()) {
+                entries++;
+                if (walk.isSubtree()) {
+                    // 未跟踪且被忽略的目录不进入
+                    if (!isUntrackedIgnored(walk)) {
+                        walk.enterSubtree();
+                    }
+                    continue;
+                }
+                String status = status(walk);
+                if (!NONE.equals(status)) {
+                    statusMap.put(walk.getPathString(), status);
+                }
+            }
+            GitMetrics.treeEntriesWalked(entries);
+        }
+        return statusMap;
+    }
+
+    /**
+     * 依次加入HEAD、暂存区、工作区三棵树，供status()使用
+     *
+     * @param headTree HEAD的tree，为null时(空仓库)使用空树
+     */
+    static void addTrees(Repository repository, TreeWalk walk, ObjectId headTree) throws IOException {
+        if (headTree == null) {
+            walk.addTree(new EmptyTreeIterator());
+        } else {
+            walk.addTree(headTree);
+        }
+        walk.addTree(new DirCacheIterator(repository.readDirCache()));
+        FileTreeIterator workTree = new FileTreeIterator(repository);
+        workTree.setDirCacheIterator(walk, INDEX);
+        walk.addTree(workTree);
+    }
+
+    /**
+     * 工作区文件的元数据与暂存区条目一致，即内容与条目的blob相同，不需要读取文件内容；
+     * 延迟检出(assume-valid)和被标记(smudged)的条目不可信，返回false
+     */
+    static boolean isClean(DirCacheEntry entry, File file) {
+        return file.isFile() && !entry.isAssumeValid() && !entry.isSmudged()
+                && entry.getLength() == file.length()
+                && entry.getLastModifiedInstant().toEpochMilli() == file.lastModified();
+    }
+
+    /**
+     * 当前TreeWalk条目的状态，HEAD/暂存区/工作区三者对比
+     */
+    static String status(TreeWalk walk) throws IOException {
+        boolean inHead = walk.getRawMode(HEAD) != FileMode.TYPE_MISSING;
+        DirCacheIterator index = walk.getTree(INDEX, DirCacheIterator.class);
+        WorkingTreeIterator workTree = walk.getTree(WORK_TREE, WorkingTreeIterator.class);
+        if (workTree == null) {
+            // 延迟检出尚未写出的文件
+            if (index != null && index.getDirCacheEntry().isAssumeValid()) {
+                return NONE;
+            }
+            return inHead || index != null ? DELETE : NONE;
+        }
+        if (index == null) {
+            if (!inHead && workTree.isEntryIgnored()) {
+                return NONE;
+            }
+            return ADD;
+        }
+        // 工作区与暂存区不一致(先比较文件元数据，必要时才读取内容)
+        if (workTree.isModified(index.getDirCacheEntry(), true, walk.getObjectReader())) {
+            return inHead ? MODIFY : ADD;
+        }
+        // 已暂存但未提交
+        if (!inHead) {
+            return ADD;
+        }
+        if (!walk.idEqual(HEAD, INDEX) || walk.getRawMode(HEAD) != walk.getRawMode(INDEX)) {
+            return MODIFY;
+        }
+        return NONE;
+    }
+
+    static boolean isUntrackedIgnored(TreeWalk walk) throws IOException {
+        WorkingTreeIterator workTree = walk.getTree(WORK_TREE, WorkingTreeIterator.class);
+        return workTree != null
+                && walk.getRawMode(HEAD) == FileMode.TYPE_MISSING
+                && walk.getTree(INDEX, DirCacheIterator.class) == null
+                && workTree.isEntryIgnored();
+    }
+}
@@ -0,0 +1,303 @@
+package service.impl;
+
+import org.apache.commons.compress.archivers.zip.StreamCompressor;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.parallel.ScatterGatherBackingStore;
+import utils.PropertiesUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * @ClassName ZipPackager
+ * @Description zip打包：各文件在zip线程池中并行压缩到内存(超过gitlab.zipSpillBytes时写入临时文件)，
+ *              再按加入顺序写入zip；已压缩的格式(按扩展名或采样压缩率判断)不再压缩，直接存储
+ * @Author jinym
+ **/
+public class ZipPackager {
+
+    // 采样判断压缩率的字节数
+    private static final int SAMPLE_BYTES = 64 * 1024;
+
+    // 小于该大小的文件不采样，直接压缩
+    private static final int MIN_SAMPLE_BYTES = 1024;
+
+    // 采样压缩后至少减少该比例才压缩
+    private static final double MIN_SAVING = 0.1;
+
+    // 本身已压缩的格式
+    private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "jar", "war",
+            "docx", "xlsx", "pptx", "docm", "xlsm", "odt", "ods", "odp", "ofd",
+            "jpg", "jpeg", "png", "gif", "webp", "heic",
+            "mp3", "mp4", "m4a", "avi", "mov", "mkv"));
+
+    private final int level;
+
+    // 单个文件压缩结果在内存中的上限
+    private final long spillBytes = PropertiesUtils.getBytes("gitlab.zipSpillBytes", 1024L * 1024);
+
+    // 同时压缩的文件数，限制压缩结果占用的内存
+    private final int window = 2 * PropertiesUtils.getInt("gitlab.zipThreads", Runtime.getRuntime().availableProcessors());
+
+    private final List<Source> sources = new ArrayList<>();
+
+    /**
+     * 使用gitlab.zipLevel配置的压缩级别
+     */
+    public ZipPackager() {
+        this(PropertiesUtils.getInt("gitlab.zipLevel", Deflater.DEFAULT_COMPRESSION));
+    }
+
+    /**
+     * @param level 压缩级别0-9，-1为默认级别，0为全部直接存储
+     */
+    public ZipPackager(int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("压缩级别错误：" + level);
+        }
+        this.level = level;
+    }
+
+    /**
+     * 打开文件内容，在压缩线程中调用，需线程安全
+     */
+    public interface EntrySource {
+        InputStream open() throws IOException;
+    }
+
+    public ZipPackager add(String name, byte[] data) {
+        return add(name, () -> new ByteArrayInputStream(data));
+    }
+
+    public ZipPackager add(String name, EntrySource source) {
+        sources.add(new Source(name, source));
+        return this;
+    }
+
+    /**
+     * 写出zip
+     *
+     * @param out 输出流，由调用方关闭
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        Deque<Future<Compressed>> pending = new ArrayDeque<>();
+        int next = 0;
+        // 关闭zip以释放Deflater，但不关闭调用方的输出流
+        try (ZipArchiveOutputStream zipOut = new ZipArchiveOutputStream(new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        })) {
+            while (next < sources.size() && pending.size() < window) {
+                pending.add(submit(sources.get(next++)));
+            }
+            while (!pending.isEmpty()) {
+                Compressed compressed = await(pending.poll());
+                try (InputStream raw = compressed.store.getInputStream()) {
+                    zipOut.addRawArchiveEntry(compressed.entry, raw);
+                } finally {
+                    compressed.store.close();
+                }
+                if (next < sources.size()) {
+                    pending.add(submit(sources.get(next++)));
+                }
+            }
+            zipOut.finish();
+        } finally {
+            // 出错时等待已提交的压缩完成，删除其临时文件
+            for (Future<Compressed> future : pending) {
+                try {
+                    future.get().store.close();
+                } catch (Exception ignored) {
+                    // 压缩失败时已自行清理
+                }
+            }
+        }
+    }
+
+    private Future<Compressed> submit(Source source) {
+        return GitExecutors.zipPool().submit(() -> compress(source));
+    }
+
+    private static Compressed await(Future<Compressed> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("zip打包被中断");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private Compressed compress(Source source) throws IOException {
+        SpillingStore store = new SpillingStore(spillBytes);
+        try (InputStream in = new BufferedInputStream(source.source.open(), SAMPLE_BYTES)) {
+            int method = method(source.name, in);
+            ZipArchiveEntry entry = new ZipArchiveEntry(source.name);
+            entry.setMethod(method);
+            try (StreamCompressor compressor = StreamCompressor.create(level, store)) {
+                compressor.deflate(in, method);
+                store.closeForWriting();
+                entry.setCrc(compressor.getCrc32());
+                entry.setSize(compressor.getBytesRead());
+                entry.setCompressedSize(compressor.getBytesWrittenForLastEntry());
+            }
+            return new Compressed(entry, store);
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 按扩展名和开头一段内容的压缩率选择压缩方式，in需支持mark
+     */
+    private int method(String name, InputStream in) throws IOException {
+        if (level == Deflater.NO_COMPRESSION || COMPRESSED_EXTENSIONS.contains(extension(name))) {
+            return ZipEntry.STORED;
+        }
+        byte[] sample = new byte[SAMPLE_BYTES];
+        in.mark(SAMPLE_BYTES);
+        int length = 0;
+        int n;
+        while (length < sample.length && (n = in.read(sample, length, sample.length - length)) > 0) {
+            length += n;
+        }
+        in.reset();
+        if (length < MIN_SAMPLE_BYTES) {
+            return ZipEntry.DEFLATED;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(sample, 0, length);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            long compressed = 0;
+            while (!deflater.finished() && compressed < length) {
+                compressed += deflater.deflate(buffer);
+            }
+            return compressed < length * (1 - MIN_SAVING) ? ZipEntry.DEFLATED : ZipEntry.STORED;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static String extension(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 || dot < name.lastIndexOf('/') ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static class Source {
+        final String name;
+        final EntrySource source;
+
+        Source(String name, EntrySource source) {
+            this.name = name;
+            this.source = source;
+        }
+    }
+
+    private static class Compressed {
+        final ZipArchiveEntry entry;
+        final SpillingStore store;
+
+        Compressed(ZipArchiveEntry entry, SpillingStore store) {
+            this.entry = entry;
+            this.store = store;
+        }
+    }
+
+    /**
+     * 压缩结果先写内存，超过上限后转为临时文件
+     */
+    private static class SpillingStore implements ScatterGatherBackingStore {
+        private final long threshold;
+        private Buffer memory = new Buffer();
+        private File file = null;
+        private OutputStream fileOut = null;
+
+        SpillingStore(long threshold) {
+            this.threshold = threshold;
+        }
+
+        @Override
+        public void writeOut(byte[] data, int offset, int length) throws IOException {
+            if (file == null && memory.size() + length > threshold) {
+                file = File.createTempFile("jgit-zip", ".tmp");
+                fileOut = new BufferedOutputStream(new FileOutputStream(file));
+                memory.writeTo(fileOut);
+                memory = null;
+            }
+            if (file == null) {
+                memory.write(data, offset, length);
+            } else {
+                fileOut.write(data, offset, length);
+            }
+        }
+
+        @Override
+        public void closeForWriting() throws IOException {
+            if (fileOut != null) {
+                fileOut.close();
+                fileOut = null;
+            }
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return file == null ? memory.toInputStream() : new BufferedInputStream(new FileInputStream(file));
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeForWriting();
+            if (file != null) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    /**
+     * 读取时不复制内部数组
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+        InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package utils;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * @ClassName ByteBufferInputStream
+ * @Description 以输入流的方式读取ByteBuffer(如BlobCache中的堆外内容)，不复制到堆内数组
+ * @Author jinym
+ **/
+public class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    /**
+     * @param buffer 从其position读到limit，读取时修改其position，调用方需传入自己的副本(duplicate())
+     */
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+}
@@ -0,0 +1,32 @@
+package utils;
+
+/**
+ * @ClassName PathUtils
+ * @Description 相对git库路径的统一处理
+ * @Author jinym
+ **/
+public class PathUtils {
+
+    private PathUtils() {
+    }
+
+    /**
+     * 转为git中的路径格式：分隔符统一为/，合并连续的/，去掉首尾的/
+     *
+     * @param relativePath 相对git库的文件或目录路径
+     * @return 规范化后的路径，为null或只有分隔符时返回""(整个git库)
+     */
+    public static String normalize(String relativePath) {
+        String path = relativePath == null ? "" : relativePath.replace('\\', '/');
+        while (path.contains("//")) {
+            path = path.replace("//", "/");
+        }
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+}
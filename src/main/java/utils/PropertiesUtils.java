@@ -20,4 +20,54 @@ public class PropertiesUtils {
     public static String getProperty(String key) {
         return properties.getProperty(key);
     }
+
+    /**
+     * 读取配置，未配置或为空时返回默认值
+     */
+    public static String getProperty(String key, String defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        return (int) getLong(key, defaultValue);
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = getProperty(key, null);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getProperty(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    /**
+     * 读取字节数配置，支持k/m/g后缀，如 10m
+     */
+    public static long getBytes(String key, long defaultValue) {
+        String value = getProperty(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        long unit;
+        switch (Character.toLowerCase(value.charAt(value.length() - 1))) {
+            case 'g':
+                unit = 1L << 30;
+                break;
+            case 'm':
+                unit = 1L << 20;
+                break;
+            case 'k':
+                unit = 1L << 10;
+                break;
+            default:
+                return Long.parseLong(value);
+        }
+        return Long.parseLong(value.substring(0, value.length() - 1).trim()) * unit;
+    }
 }
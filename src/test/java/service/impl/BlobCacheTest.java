@@ -0,0 +1,120 @@
+package service.impl;
+
+import entity.HisFile;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @ClassName BlobCacheTest
+ * @Description 历史文件内容缓存：窗口内第二次读取时才放入缓存，返回的内容只读且互不影响，批量读取不复制已缓存的内容
+ * @Author jinym
+ **/
+public class BlobCacheTest {
+
+    private TestRepository repo;
+
+    private Repository repository;
+
+    @Before
+    public void setUp() throws Exception {
+        repo = new TestRepository("a.txt", "a1\n");
+        repository = repo.open();
+        BlobCache.getInstance().clear();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        BlobCache.getInstance().clear();
+        repository.close();
+        repo.close();
+    }
+
+    @Test
+    public void admitsOnSecondRead() throws Exception {
+        ObjectId blobId = insert("被读取两次的文件");
+        BlobCache cache = BlobCache.getInstance();
+        try (ObjectReader reader = repository.newObjectReader()) {
+            ByteBuffer first = cache.load(blobId, reader.open(blobId, Constants.OBJ_BLOB));
+            assertEquals("被读取两次的文件", decode(first));
+            // 只读一次的文件不放入缓存
+            assertNull(cache.get(blobId));
+
+            cache.load(blobId, reader.open(blobId, Constants.OBJ_BLOB));
+            assertNotNull(cache.get(blobId));
+            assertEquals(1, cache.stats().getSize());
+        }
+    }
+
+    @Test
+    public void cachedContentIsIndependentPerCaller() throws Exception {
+        ObjectId blobId = insert("content");
+        BlobCache cache = BlobCache.getInstance();
+        try (ObjectReader reader = repository.newObjectReader()) {
+            cache.load(blobId, reader.open(blobId, Constants.OBJ_BLOB));
+            cache.load(blobId, reader.open(blobId, Constants.OBJ_BLOB));
+        }
+        ByteBuffer first = cache.get(blobId);
+        assertTrue(first.isReadOnly());
+        first.get(new byte[3]);
+        ByteBuffer second = cache.get(blobId);
+        assertEquals(0, second.position());
+        assertEquals("content", decode(second));
+    }
+
+    @Test
+    public void batchReadUsesCachedBuffer() throws Exception {
+        String head = repository.resolve(Constants.HEAD).name();
+        try (HisFileExporter exporter = new HisFileExporter(repository)) {
+            exporter.read(head, "a.txt");
+            exporter.read(head, "a.txt");
+        }
+        // 已缓存的文件直接引用堆外内容，需要byte[]时才复制
+        HisFile hisFile = new BlobBatchReader(repository).read(new String[]{head}, new String[]{"a.txt"}).get(0);
+        assertNull(hisFile.getError());
+        assertTrue(hisFile.getBuffer().isDirect());
+        assertEquals("a1\n", decode(hisFile.getBuffer()));
+        assertEquals("a1\n", new String(hisFile.getData(), StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IOException.class)
+    public void readRejectsLargeFile() throws Exception {
+        StringBuilder content = new StringBuilder();
+        while (content.length() <= 4 * 1024 * 1024) {
+            content.append("large file line\n");
+        }
+        repo.write("large.txt", content.toString());
+        ObjectId commitId = repo.commit("大文件");
+        try (HisFileExporter exporter = new HisFileExporter(repository)) {
+            exporter.read(commitId.name(), "large.txt");
+        }
+    }
+
+    private ObjectId insert(String content) throws Exception {
+        try (ObjectInserter inserter = repository.newObjectInserter()) {
+            ObjectId blobId = inserter.insert(Constants.OBJ_BLOB, content.getBytes(StandardCharsets.UTF_8));
+            inserter.flush();
+            return blobId;
+        }
+    }
+
+    private static String decode(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.duplicate().get(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+}
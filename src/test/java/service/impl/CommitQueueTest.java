@@ -0,0 +1,191 @@
+package service.impl;
+
+import entity.CommitResult;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import utils.PropertiesUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @ClassName CommitQueueTest
+ * @Description 提交队列：时间窗口内的请求合并为一批，只更新一次分支，并推送到远程
+ * @Author jinym
+ **/
+public class CommitQueueTest {
+
+    private TestRepository repo;
+
+    private CommitQueue queue;
+
+    private final List<String> committed = new CopyOnWriteArrayList<>();
+
+    // 提交后回调在完成提交结果之后执行
+    private final Semaphore callbacks = new Semaphore(0);
+
+    @Before
+    public void setUp() throws Exception {
+        repo = new TestRepository("a.txt", "a1\n", "dir/b.txt", "b1\n");
+        queue = new CommitQueue(repo::open, null, files -> {
+            committed.addAll(files);
+            callbacks.release();
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        queue.close();
+        repo.close();
+    }
+
+    @Test
+    public void batchesConcurrentRequestsIntoOneBranchUpdate() throws Exception {
+        int reflog = reflogSize();
+        repo.write("a.txt", "a2\n");
+        repo.write("dir/b.txt", "b2\n");
+        CompletableFuture<CommitResult> first = queue.submit("a.txt", "修改a");
+        CompletableFuture<CommitResult> second = queue.submit("dir", "修改b");
+        CommitResult a = first.get(10, TimeUnit.SECONDS);
+        CommitResult b = second.get(10, TimeUnit.SECONDS);
+
+        assertEquals(Collections.singletonList("a.txt"), a.getFiles());
+        assertEquals(Collections.singletonList("dir/b.txt"), b.getFiles());
+        assertTrue(callbacks.tryAcquire(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("a.txt", "dir/b.txt"), sorted(committed));
+        // 每个请求一个保留自己备注的提交，依次串联，整批只更新一次分支
+        assertEquals(reflog + 1, reflogSize());
+        try (Repository repository = repo.open(); RevWalk walk = new RevWalk(repository)) {
+            RevCommit head = walk.parseCommit(repository.resolve(Constants.HEAD));
+            assertEquals(b.getCommitId(), head.name());
+            assertEquals("修改b", head.getFullMessage());
+            assertEquals(a.getCommitId(), head.getParent(0).name());
+            assertEquals("b2\n", repo.read(head, "dir/b.txt"));
+            assertEquals("a2\n", repo.read(head, "a.txt"));
+        }
+
+        assertTrue(a.getPushed().get(10, TimeUnit.SECONDS));
+        assertTrue(b.getPushed().get(10, TimeUnit.SECONDS));
+        assertEquals(ObjectId.fromString(b.getCommitId()), repo.remoteHead());
+    }
+
+    @Test
+    public void commitsOnlyRequestedPaths() throws Exception {
+        repo.write("a.txt", "a2\n");
+        repo.write("dir/b.txt", "b2\n");
+        CommitResult result = queue.submit("a.txt", "只提交a").get(10, TimeUnit.SECONDS);
+        assertEquals(Collections.singletonList("a.txt"), result.getFiles());
+        try (Repository repository = repo.open(); RevWalk walk = new RevWalk(repository)) {
+            RevCommit head = walk.parseCommit(repository.resolve(Constants.HEAD));
+            assertEquals("a2\n", repo.read(head, "a.txt"));
+            assertEquals("b1\n", repo.read(head, "dir/b.txt"));
+        }
+    }
+
+    @Test
+    public void noChangesGivesNoCommit() throws Exception {
+        ObjectId before = repo.remoteHead();
+        CommitResult result = queue.submit("a.txt", "没有修改").get(10, TimeUnit.SECONDS);
+        assertNull(result.getCommitId());
+        assertTrue(result.getFiles().isEmpty());
+        assertFalse(result.getPushed().get(10, TimeUnit.SECONDS));
+        assertEquals(before, repo.remoteHead());
+    }
+
+    @Test
+    public void submitAfterCloseFails() throws Exception {
+        queue.close();
+        CompletableFuture<CommitResult> future = queue.submit("a.txt", "关闭后提交");
+        assertTrue(future.isCompletedExceptionally());
+        assertFalse(queue.requestPush().get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void maxFilesCountsPaths() throws Exception {
+        int reflog = reflogSize();
+        repo.write("a.txt", "a2\n");
+        repo.write("dir/b.txt", "b2\n");
+        repo.write("dir/c.txt", "c1\n");
+        repo.write("d.txt", "d1\n");
+        repo.write("e.txt", "e1\n");
+        try (CommitQueue small = newQueue(1000L, 4)) {
+            // 两个请求共5个路径，超过上限：立即开始提交，第二个请求进入下一批
+            CompletableFuture<CommitResult> first = small.submit(Arrays.asList("a.txt", "dir/b.txt", "dir/c.txt"), "修改3个文件");
+            CompletableFuture<CommitResult> second = small.submit(Arrays.asList("d.txt", "e.txt"), "新增2个文件");
+            assertEquals(3, first.get(10, TimeUnit.SECONDS).getFiles().size());
+            assertEquals(2, second.get(10, TimeUnit.SECONDS).getFiles().size());
+        }
+        assertEquals(reflog + 2, reflogSize());
+    }
+
+    @Test
+    public void fullBatchStartsBeforeWindowCloses() throws Exception {
+        int reflog = reflogSize();
+        repo.write("a.txt", "a2\n");
+        repo.write("dir/b.txt", "b2\n");
+        try (CommitQueue full = newQueue(60 * 1000L, 2)) {
+            CompletableFuture<CommitResult> first = full.submit("a.txt", "修改a");
+            CompletableFuture<CommitResult> second = full.submit("dir/b.txt", "修改b");
+            // 达到文件数上限后不再等待60秒的时间窗口
+            first.get(10, TimeUnit.SECONDS);
+            second.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(reflog + 1, reflogSize());
+    }
+
+    /**
+     * 按指定的时间窗口和文件数上限建立提交队列
+     */
+    private CommitQueue newQueue(long windowMillis, int maxFiles) {
+        Properties properties = PropertiesUtils.properties;
+        String window = properties.getProperty("gitlab.commitWindowMillis");
+        String files = properties.getProperty("gitlab.commitMaxFiles");
+        properties.setProperty("gitlab.commitWindowMillis", String.valueOf(windowMillis));
+        properties.setProperty("gitlab.commitMaxFiles", String.valueOf(maxFiles));
+        try {
+            return new CommitQueue(repo::open, null, committedFiles -> {
+            });
+        } finally {
+            restore(properties, "gitlab.commitWindowMillis", window);
+            restore(properties, "gitlab.commitMaxFiles", files);
+        }
+    }
+
+    private static void restore(Properties properties, String key, String value) {
+        if (value == null) {
+            properties.remove(key);
+        } else {
+            properties.setProperty(key, value);
+        }
+    }
+
+    private int reflogSize() throws Exception {
+        try (Repository repository = repo.open()) {
+            return repository.getReflogReader(Constants.HEAD).getReverseEntries().size();
+        }
+    }
+
+    private static List<String> sorted(List<String> files) {
+        List<String> copy = new ArrayList<>(files);
+        Collections.sort(copy);
+        return copy;
+    }
+}
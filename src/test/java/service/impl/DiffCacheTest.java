@@ -0,0 +1,80 @@
+package service.impl;
+
+import entity.DiffOptions;
+import entity.DiffSummary;
+import entity.FileDiff;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @ClassName DiffCacheTest
+ * @Description 版本对比结果缓存：按版本和对比选项区分，放入和取出都复制，调用方修改不影响缓存
+ * @Author jinym
+ **/
+public class DiffCacheTest {
+
+    private static final ObjectId OLD = ObjectId.fromString("1111111111111111111111111111111111111111");
+
+    private static final ObjectId NEW = ObjectId.fromString("2222222222222222222222222222222222222222");
+
+    @Test
+    public void returnsCopies() {
+        DiffCache cache = new DiffCache();
+        DiffOptions options = new DiffOptions();
+        DiffSummary summary = summary();
+        cache.putSummary(OLD, NEW, options, summary);
+        // 放入后修改原对象不影响缓存
+        summary.getFiles().get(0).setLinesAdded(100);
+        summary.getFiles().clear();
+
+        DiffSummary cached = cache.getSummary(OLD, NEW, options);
+        assertEquals(1, cached.getFiles().size());
+        assertEquals(3, cached.getFiles().get(0).getLinesAdded());
+        cached.getFiles().get(0).setLinesAdded(200);
+        cached.setLinesAdded(200);
+
+        DiffSummary again = cache.getSummary(OLD, NEW, options);
+        assertNotSame(cached, again);
+        assertEquals(3, again.getFiles().get(0).getLinesAdded());
+        assertEquals(3, again.getLinesAdded());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void cachedFileListIsUnmodifiable() {
+        DiffCache cache = new DiffCache();
+        cache.putSummary(OLD, NEW, new DiffOptions(), summary());
+        cache.getSummary(OLD, NEW, new DiffOptions()).getFiles().clear();
+    }
+
+    @Test
+    public void keyIncludesOptions() {
+        DiffCache cache = new DiffCache();
+        cache.putSummary(OLD, NEW, new DiffOptions(), summary());
+        DiffOptions nameOnly = new DiffOptions();
+        nameOnly.setNameOnly(true);
+        assertNull(cache.getSummary(OLD, NEW, nameOnly));
+        assertNull(cache.getSummary(NEW, OLD, new DiffOptions()));
+        assertEquals(1, cache.getSummary(OLD, NEW, new DiffOptions()).getFiles().size());
+    }
+
+    private static DiffSummary summary() {
+        FileDiff fileDiff = new FileDiff();
+        fileDiff.setChangeType(DiffEntry.ChangeType.MODIFY);
+        fileDiff.setOldPath("a.txt");
+        fileDiff.setNewPath("a.txt");
+        fileDiff.setLinesAdded(3);
+        fileDiff.setLinesRemoved(1);
+        DiffSummary summary = new DiffSummary();
+        summary.setOldTreeId(OLD);
+        summary.setNewTreeId(NEW);
+        summary.getFiles().add(fileDiff);
+        summary.setLinesAdded(3);
+        summary.setLinesRemoved(1);
+        return summary;
+    }
+}
@@ -0,0 +1,140 @@
+package service.impl;
+
+import entity.TreeItemVO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @ClassName DirTreeCacheTest
+ * @Description 常驻内存的目录树：增量刷新节点和状态，根目录刷新时查询整个工作区，返回的树不受之后的更新影响
+ * @Author jinym
+ **/
+public class DirTreeCacheTest {
+
+    private File work;
+
+    private DirTreeCache cache;
+
+    // 模拟的状态：<相对路径，状态>
+    private final Map<String, String> statusMap = new ConcurrentHashMap<>();
+
+    // 每次状态查询的路径过滤
+    private final List<Collection<String>> queries = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        work = Files.createTempDirectory("jgit-tree").toFile();
+        write("a.txt", "a");
+        write("dir/b.txt", "b");
+        cache = new DirTreeCache(work.getPath(), paths -> {
+            queries.add(new ArrayList<>(paths));
+            // 与PathFilterGroup.createFromStrings()一样不接受空路径
+            if (paths.contains("")) {
+                throw new IllegalArgumentException("空路径");
+            }
+            return new ConcurrentHashMap<>(statusMap);
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache.close();
+        Files.walkFileTree(work.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test
+    public void refreshUpdatesNodeAndStatus() throws Exception {
+        TreeItemVO before = cache.getTree();
+        write("dir/c.txt", "c");
+        statusMap.put("dir/c.txt", WorkingTreeStatus.ADD);
+        cache.refresh("dir/c.txt");
+
+        TreeItemVO tree = cache.getTree();
+        assertEquals(WorkingTreeStatus.ADD, find(tree, "dir/c.txt").getStatus());
+        assertEquals(WorkingTreeStatus.NONE, find(tree, "a.txt").getStatus());
+        // 已返回的树不受增量更新影响
+        assertNull(find(before, "dir/c.txt"));
+        assertEquals(Collections.singletonList("dir/c.txt"), queries.get(queries.size() - 1));
+    }
+
+    @Test
+    public void refreshRootQueriesWholeWorkTree() throws Exception {
+        cache.getTree();
+        statusMap.put("a.txt", WorkingTreeStatus.MODIFY);
+        statusMap.put("dir/b.txt", WorkingTreeStatus.MODIFY);
+        cache.refresh("");
+        cache.refreshStatus(Collections.singletonList("/"));
+
+        TreeItemVO tree = cache.getTree();
+        assertEquals(WorkingTreeStatus.MODIFY, find(tree, "a.txt").getStatus());
+        assertEquals(WorkingTreeStatus.MODIFY, find(tree, "dir/b.txt").getStatus());
+        assertTrue(queries.get(queries.size() - 1).isEmpty());
+    }
+
+    @Test
+    public void deletedDirectoryIsRemoved() throws Exception {
+        cache.getTree();
+        Files.delete(new File(work, "dir/b.txt").toPath());
+        Files.delete(new File(work, "dir").toPath());
+        cache.refresh("dir");
+        TreeItemVO tree = cache.getTree();
+        assertNull(find(tree, "dir"));
+        assertNotNull(find(tree, "a.txt"));
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(work, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static TreeItemVO find(TreeItemVO node, String path) {
+        for (String name : path.split("/")) {
+            TreeItemVO next = null;
+            for (TreeItemVO child : node.getChildren()) {
+                if (child.getFileName().equals(name)) {
+                    next = child;
+                }
+            }
+            if (next == null) {
+                return null;
+            }
+            node = next;
+        }
+        return node;
+    }
+}
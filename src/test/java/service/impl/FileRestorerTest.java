@@ -0,0 +1,102 @@
+package service.impl;
+
+import entity.RestoreResult;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @ClassName FileRestorerTest
+ * @Description 恢复历史版本：只写出与目标不一致的文件，删除目标中不存在的已跟踪文件，同时更新暂存区
+ * @Author jinym
+ **/
+public class FileRestorerTest {
+
+    private TestRepository repo;
+
+    private ObjectId first;
+
+    @Before
+    public void setUp() throws Exception {
+        repo = new TestRepository("a.txt", "a1\n", "dir/b.txt", "b1\n", "dir/c.txt", "c1\n");
+        try (Repository repository = repo.open()) {
+            first = repository.resolve("HEAD");
+        }
+        repo.write("a.txt", "a2\n");
+        repo.write("dir/d.txt", "d2\n");
+        new File(repo.getWork(), "dir/b.txt").delete();
+        repo.commit("第二版");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        repo.close();
+    }
+
+    @Test
+    public void restoresWholeWorkTree() throws Exception {
+        RestoreResult result;
+        try (Repository repository = repo.open()) {
+            result = new FileRestorer(repository).restore(first, Collections.<String>emptyList());
+        }
+        assertEquals(first.name(), result.getVersion());
+        assertEquals(Arrays.asList("a.txt", "dir/b.txt"), result.getFiles());
+        assertEquals(Collections.singletonList("dir/d.txt"), result.getDeleted());
+        assertEquals(1, result.getUnchanged());
+        assertEquals("a1\n", repo.read("a.txt"));
+        assertEquals("b1\n", repo.read("dir/b.txt"));
+        assertFalse(new File(repo.getWork(), "dir/d.txt").exists());
+
+        // 暂存区已与目标一致：相对HEAD只有恢复带来的变化，工作区与暂存区之间没有差异
+        try (Repository repository = repo.open()) {
+            Map<String, String> status = new WorkingTreeStatus(repository).scan(null);
+            assertEquals(3, status.size());
+            assertEquals(WorkingTreeStatus.DELETE, status.get("dir/d.txt"));
+        }
+    }
+
+    @Test
+    public void secondRestoreWritesNothing() throws Exception {
+        try (Repository repository = repo.open()) {
+            new FileRestorer(repository).restore(first, Collections.singletonList(""));
+            RestoreResult again = new FileRestorer(repository).restore(first, Collections.singletonList(""));
+            assertTrue(again.getFiles().isEmpty());
+            assertTrue(again.getDeleted().isEmpty());
+            assertEquals(3, again.getUnchanged());
+        }
+    }
+
+    @Test
+    public void restoresOnlyRequestedPaths() throws Exception {
+        RestoreResult result;
+        try (Repository repository = repo.open()) {
+            result = new FileRestorer(repository).restore(first, Collections.singletonList("\\dir/"));
+        }
+        assertEquals(Collections.singletonList("dir/b.txt"), result.getFiles());
+        assertEquals(Collections.singletonList("dir/d.txt"), result.getDeleted());
+        assertEquals("a2\n", repo.read("a.txt"));
+    }
+
+    @Test
+    public void rewritesLocallyModifiedFile() throws Exception {
+        try (Repository repository = repo.open()) {
+            ObjectId second = repository.resolve("HEAD");
+            repo.write("a.txt", "local change\n");
+            RestoreResult result = new FileRestorer(repository).restore(second, Collections.singletonList("a.txt"));
+            assertEquals(Collections.singletonList("a.txt"), result.getFiles());
+            assertEquals("a2\n", repo.read("a.txt"));
+            assertTrue(new WorkingTreeStatus(repository).scan(null).isEmpty());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package service.impl;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @ClassName LazyWorkTreeTest
+ * @Description 延迟检出：不检出的clone状态为未修改，按路径写出文件后按正常工作区处理
+ * @Author jinym
+ **/
+public class LazyWorkTreeTest {
+
+    private TestRepository repo;
+
+    private Repository lazy;
+
+    @Before
+    public void setUp() throws Exception {
+        repo = new TestRepository("a.txt", "a1\n", "dir/b.txt", "b1\n", "dir/sub/c.txt", "c1\n");
+        File dir = new File(repo.getRoot(), "lazy");
+        Git.cloneRepository().setURI(repo.getRemote().toURI().toString()).setDirectory(dir)
+                .setNoCheckout(true).call().close();
+        lazy = Git.open(dir).getRepository();
+        LazyWorkTree.createBranch(lazy, TestRepository.BRANCH);
+        LazyWorkTree.initIndex(lazy);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        lazy.close();
+        repo.close();
+    }
+
+    @Test
+    public void emptyWorkTreeIsClean() throws Exception {
+        assertEquals(Constants.R_HEADS + TestRepository.BRANCH, lazy.getFullBranch());
+        assertEquals(repo.remoteHead(), lazy.resolve(Constants.HEAD));
+        assertTrue(LazyWorkTree.isLazy(lazy));
+        assertEquals(Arrays.asList("a.txt", "dir/b.txt", "dir/sub/c.txt"), LazyWorkTree.pendingPaths(lazy));
+        assertTrue(new WorkingTreeStatus(lazy).scan(null).isEmpty());
+    }
+
+    @Test
+    public void materializesRequestedDirectory() throws Exception {
+        assertEquals(2, LazyWorkTree.materialize(lazy, Collections.singletonList("/dir/")));
+        assertEquals("b1\n", read("dir/b.txt"));
+        assertEquals("c1\n", read("dir/sub/c.txt"));
+        assertFalse(new File(lazy.getWorkTree(), "a.txt").exists());
+        assertEquals(Collections.singletonList("a.txt"), LazyWorkTree.pendingPaths(lazy));
+        assertTrue(LazyWorkTree.isLazy(lazy));
+        // 写出的文件元数据已写入暂存区，不需要读取内容即为未修改
+        assertTrue(new WorkingTreeStatus(lazy).scan(null).isEmpty());
+
+        assertEquals(1, LazyWorkTree.materialize(lazy, Collections.singletonList("")));
+        assertFalse(LazyWorkTree.isLazy(lazy));
+        assertTrue(LazyWorkTree.pendingPaths(lazy).isEmpty());
+    }
+
+    @Test
+    public void materializedFileShowsLocalChanges() throws Exception {
+        LazyWorkTree.materialize(lazy, Collections.singletonList("a.txt"));
+        Files.write(new File(lazy.getWorkTree(), "a.txt").toPath(), "local change\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(WorkingTreeStatus.MODIFY, new WorkingTreeStatus(lazy).scan(null).get("a.txt"));
+    }
+
+    @Test
+    public void releasesIndexLockAfterMaterialize() throws Exception {
+        LazyWorkTree.materialize(lazy, Collections.singletonList("a.txt"));
+        // 没有需要更新的条目时也不能留下index.lock
+        LazyWorkTree.materialize(lazy, Collections.singletonList("a.txt"));
+        assertFalse(new File(lazy.getDirectory(), "index.lock").exists());
+    }
+
+    private String read(String path) throws Exception {
+        return new String(Files.readAllBytes(new File(lazy.getWorkTree(), path).toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,103 @@
+package service.impl;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @ClassName RenameFollowerTest
+ * @Description 跟随重命名的文件历史：重命名前的版本按原路径返回，识别结果写入RenameCache
+ * @Author jinym
+ **/
+public class RenameFollowerTest {
+
+    private static final String TEXT = "line 1\nline 2\nline 3\nline 4\nline 5\nline 6\nline 7\nline 8\n";
+
+    private TestRepository repo;
+
+    private final List<ObjectId> commits = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        repo = new TestRepository("old.txt", TEXT, "other.txt", "other\n");
+        try (Repository repository = repo.open()) {
+            commits.add(repository.resolve(Constants.HEAD));
+        }
+        repo.write("old.txt", TEXT + "line 9\n");
+        commits.add(repo.commit("修改"));
+        // 重命名时内容有少量修改，按相似度识别
+        new File(repo.getWork(), "old.txt").delete();
+        repo.write("dir/new.txt", TEXT + "line 9\nline 10\n");
+        commits.add(repo.commit("重命名"));
+        repo.write("other.txt", "other 2\n");
+        commits.add(repo.commit("修改其他文件"));
+        repo.write("dir/new.txt", TEXT + "line 9\nline 10\nline 11\n");
+        commits.add(repo.commit("重命名后修改"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        repo.close();
+    }
+
+    @Test
+    public void followsRename() throws Exception {
+        RenameCache cache = new RenameCache();
+        try (Repository repository = repo.open()) {
+            List<RenameFollower.Version> versions = new RenameFollower(repository, cache)
+                    .follow(repository.resolve(Constants.HEAD), "dir/new.txt", 0);
+            assertEquals(Arrays.asList(commits.get(4), commits.get(2), commits.get(1), commits.get(0)), idsOf(versions));
+            assertEquals(Arrays.asList("dir/new.txt", "dir/new.txt", "old.txt", "old.txt"), pathsOf(versions));
+        }
+        assertEquals("old.txt", cache.get(commits.get(2), "dir/new.txt"));
+    }
+
+    @Test
+    public void stopsAtMaxCount() throws Exception {
+        try (Repository repository = repo.open()) {
+            List<RenameFollower.Version> versions = new RenameFollower(repository, null)
+                    .follow(repository.resolve(Constants.HEAD), "dir/new.txt", 3);
+            assertEquals(Arrays.asList(commits.get(4), commits.get(2), commits.get(1)), idsOf(versions));
+            assertEquals("old.txt", versions.get(2).getPath());
+        }
+    }
+
+    @Test
+    public void newFileHasNoRename() throws Exception {
+        RenameCache cache = new RenameCache();
+        try (Repository repository = repo.open()) {
+            List<RenameFollower.Version> versions = new RenameFollower(repository, cache)
+                    .follow(repository.resolve(Constants.HEAD), "other.txt", 0);
+            assertEquals(Arrays.asList(commits.get(3), commits.get(0)), idsOf(versions));
+        }
+        // 第一次提交没有父提交，不识别重命名
+        assertNull(cache.get(commits.get(0), "other.txt"));
+    }
+
+    private static List<ObjectId> idsOf(List<RenameFollower.Version> versions) {
+        List<ObjectId> ids = new ArrayList<>();
+        for (RenameFollower.Version version : versions) {
+            ids.add(version.getCommit().copy());
+        }
+        return ids;
+    }
+
+    private static List<String> pathsOf(List<RenameFollower.Version> versions) {
+        List<String> paths = new ArrayList<>();
+        for (RenameFollower.Version version : versions) {
+            paths.add(version.getPath());
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,131 @@
+package service.impl;
+
+import entity.SyncStatus;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @ClassName SyncSchedulerTest
+ * @Description 后台同步：落后时快进，本地有未推送的提交时交给推送，与远程分叉和工作区有修改时不改变本地版本
+ * @Author jinym
+ **/
+public class SyncSchedulerTest {
+
+    private TestRepository repo;
+
+    private SyncScheduler scheduler;
+
+    private final AtomicInteger pushes = new AtomicInteger();
+
+    private final AtomicInteger headChanges = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        repo = new TestRepository("a.txt", "a1\n", "b.txt", "b1\n");
+        scheduler = new SyncScheduler(repo::open, repo.getWork().getPath(), TestRepository.BRANCH, null, 0L);
+        scheduler.setPusher(pushes::incrementAndGet);
+        scheduler.addListener((repository, oldHead, newHead) -> headChanges.incrementAndGet());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.close();
+        repo.close();
+    }
+
+    @Test
+    public void upToDate() {
+        SyncStatus status = scheduler.syncNow();
+        assertNull(status.getLastError());
+        assertEquals(0, status.getBehind());
+        assertNotNull(status.getLastSuccessTime());
+        assertEquals(0, pushes.get());
+        assertEquals(0, headChanges.get());
+    }
+
+    @Test
+    public void fastForwardsToRemote() throws Exception {
+        ObjectId remote = repo.pushFromOther("远程修改", "a.txt", "a2\n");
+        SyncStatus status = scheduler.syncNow();
+        assertNull(status.getLastError());
+        assertEquals(0, status.getBehind());
+        assertEquals(remote.name(), status.getLocalHead());
+        assertEquals(remote.name(), status.getRemoteHead());
+        assertEquals("a2\n", repo.read("a.txt"));
+        assertEquals(1, headChanges.get());
+        assertEquals(0, pushes.get());
+    }
+
+    @Test
+    public void pushesUnpushedCommit() throws Exception {
+        repo.write("b.txt", "local\n");
+        ObjectId local = repo.commit("本地提交");
+
+        SyncStatus status = scheduler.syncNow();
+        assertNull(status.getLastError());
+        assertEquals(0, status.getBehind());
+        assertEquals(1, status.getAhead());
+        assertFalse(status.isDiverged());
+        assertNotNull(status.getLastSuccessTime());
+        assertEquals(local.name(), status.getLocalHead());
+        assertEquals(1, pushes.get());
+        assertEquals(0, headChanges.get());
+    }
+
+    @Test
+    public void divergedKeepsLocalHead() throws Exception {
+        repo.write("b.txt", "local\n");
+        ObjectId local = repo.commit("本地提交");
+        ObjectId remote = repo.pushFromOther("远程修改", "a.txt", "a2\n");
+
+        // 分叉时只报告，不合并也不重置，由调用方处理
+        SyncStatus status = scheduler.syncNow();
+        assertNull(status.getLastError());
+        assertTrue(status.isDiverged());
+        assertEquals(1, status.getAhead());
+        assertEquals(1, status.getBehind());
+        assertEquals(0, status.getConsecutiveFailures());
+        assertNull(status.getLastSuccessTime());
+        assertEquals(local.name(), status.getLocalHead());
+        assertEquals(remote.name(), status.getRemoteHead());
+        assertEquals("a1\n", repo.read("a.txt"));
+        assertEquals("local\n", repo.read("b.txt"));
+        try (Repository repository = repo.open()) {
+            assertEquals(local, repository.resolve(Constants.HEAD));
+            assertTrue(new WorkingTreeStatus(repository).scan(null).isEmpty());
+        }
+        assertEquals(0, pushes.get());
+        assertEquals(0, headChanges.get());
+    }
+
+    @Test
+    public void dirtyWorkTreeIsNotSuccess() throws Exception {
+        ObjectId before;
+        try (Repository repository = repo.open()) {
+            before = repository.resolve(Constants.HEAD);
+        }
+        repo.write("b.txt", "uncommitted\n");
+        repo.pushFromOther("远程修改", "a.txt", "a2\n");
+
+        SyncStatus status = scheduler.syncNow();
+        assertNull(status.getLastError());
+        assertTrue(status.isDirty());
+        assertEquals(1, status.getBehind());
+        assertEquals(before.name(), status.getLocalHead());
+        assertNull(status.getLastSuccessTime());
+        assertEquals(-1, status.getLagMillis());
+        assertEquals("a1\n", repo.read("a.txt"));
+    }
+}
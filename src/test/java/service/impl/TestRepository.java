@@ -0,0 +1,191 @@
+package service.impl;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * @ClassName TestRepository
+ * @Description 单元测试用的本地仓库：临时目录下的bare仓库代替远程服务器，work为服务使用的工作区，
+ *              other为另一个客户端的clone，用于模拟远程分支上的新提交
+ * @Author jinym
+ **/
+class TestRepository implements AutoCloseable {
+
+    static final String BRANCH = "master";
+
+    private final File root;
+
+    private final File remote;
+
+    private final File work;
+
+    private File other = null;
+
+    /**
+     * 建立远程仓库和工作区，工作区的第一次提交包含files中的文件并已推送
+     *
+     * @param files 依次为相对路径和内容
+     */
+    TestRepository(String... files) throws Exception {
+        root = Files.createTempDirectory("jgit-test").toFile();
+        remote = new File(root, "remote.git");
+        work = new File(root, "work");
+        try (Git bare = Git.init().setBare(true).setDirectory(remote).call()) {
+            // 推送后不在后台gc，测试结束时可以直接删除目录
+            StoredConfig config = bare.getRepository().getConfig();
+            config.setBoolean("receive", null, "autogc", false);
+            config.save();
+        }
+        try (Git git = Git.init().setDirectory(work).call()) {
+            for (int i = 0; i < files.length; i += 2) {
+                write(work, files[i], files[i + 1]);
+            }
+            commit(git, "初始化");
+            StoredConfig config = git.getRepository().getConfig();
+            config.setString("branch", BRANCH, "remote", Constants.DEFAULT_REMOTE_NAME);
+            config.setString("branch", BRANCH, "merge", Constants.R_HEADS + BRANCH);
+            config.save();
+            git.remoteAdd().setName(Constants.DEFAULT_REMOTE_NAME).setUri(new URIish(remote.toURI().toURL())).call();
+            git.push().setRemote(Constants.DEFAULT_REMOTE_NAME)
+                    .setRefSpecs(new RefSpec(Constants.R_HEADS + BRANCH + ":" + Constants.R_HEADS + BRANCH)).call();
+            git.fetch().setRemote(Constants.DEFAULT_REMOTE_NAME).call();
+        }
+    }
+
+    File getRoot() {
+        return root;
+    }
+
+    File getRemote() {
+        return remote;
+    }
+
+    File getWork() {
+        return work;
+    }
+
+    /**
+     * 打开工作区仓库，由调用方关闭
+     */
+    Repository open() throws IOException {
+        return new FileRepositoryBuilder().setWorkTree(work).setMustExist(true).build();
+    }
+
+    /**
+     * 写入工作区文件，不提交
+     */
+    void write(String path, String content) throws IOException {
+        write(work, path, content);
+    }
+
+    String read(String path) throws IOException {
+        return new String(Files.readAllBytes(new File(work, path).toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 读取某个版本中的文件内容
+     *
+     * @return 文件不存在时返回null
+     */
+    String read(ObjectId commitId, String path) throws IOException {
+        try (Repository repository = open(); RevWalk walk = new RevWalk(repository);
+             TreeWalk treeWalk = TreeWalk.forPath(repository, path, walk.parseCommit(commitId).getTree())) {
+            if (treeWalk == null) {
+                return null;
+            }
+            return new String(repository.open(treeWalk.getObjectId(0)).getBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * 提交工作区的全部修改(包括删除)，不推送
+     */
+    ObjectId commit(String msg) throws Exception {
+        try (Git git = Git.open(work)) {
+            return commit(git, msg);
+        }
+    }
+
+    /**
+     * 另一个客户端修改文件后提交并推送，远程分支前进一个提交
+     *
+     * @param files 依次为相对路径和内容，内容为null时删除
+     * @return 远程分支的新版本号
+     */
+    ObjectId pushFromOther(String msg, String... files) throws Exception {
+        if (other == null) {
+            other = new File(root, "other");
+            Git.cloneRepository().setURI(remote.toURI().toString()).setDirectory(other).call().close();
+        }
+        try (Git git = Git.open(other)) {
+            git.pull().call();
+            for (int i = 0; i < files.length; i += 2) {
+                if (files[i + 1] == null) {
+                    Files.delete(new File(other, files[i]).toPath());
+                } else {
+                    write(other, files[i], files[i + 1]);
+                }
+            }
+            ObjectId id = commit(git, msg);
+            git.push().call();
+            return id;
+        }
+    }
+
+    /**
+     * 远程分支当前的版本号
+     */
+    ObjectId remoteHead() throws IOException {
+        try (Repository repository = new FileRepositoryBuilder().setGitDir(remote).setMustExist(true).build()) {
+            return repository.resolve(Constants.R_HEADS + BRANCH);
+        }
+    }
+
+    private static RevCommit commit(Git git, String msg) throws Exception {
+        git.add().addFilepattern(".").call();
+        git.add().addFilepattern(".").setUpdate(true).call();
+        return git.commit().setMessage(msg).setAuthor("test", "test@example.com")
+                .setCommitter("test", "test@example.com").call();
+    }
+
+    private static void write(File dir, String path, String content) throws IOException {
+        File file = new File(dir, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() throws IOException {
+        Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,79 @@
+package service.impl;
+
+import entity.CacheStats;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @ClassName WeightedLruCacheTest
+ * @Description 按字节数限制容量的LRU缓存：超出上限时淘汰最近最少使用的条目
+ * @Author jinym
+ **/
+public class WeightedLruCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        WeightedLruCache<String, String> cache = new WeightedLruCache<>(10, String::length);
+        cache.put("a", "aaaa");
+        cache.put("b", "bbbb");
+        // 访问a后b成为最近最少使用的条目
+        assertEquals("aaaa", cache.get("a"));
+        cache.put("c", "cccc");
+        assertNull(cache.get("b"));
+        assertEquals("aaaa", cache.get("a"));
+        assertEquals("cccc", cache.get("c"));
+
+        CacheStats stats = cache.stats();
+        assertEquals(1, stats.getEvictions());
+        assertEquals(2, stats.getSize());
+        assertEquals(8, stats.getBytes());
+        assertEquals(3, stats.getHits());
+        assertEquals(1, stats.getMisses());
+    }
+
+    @Test
+    public void replacingValueUpdatesWeight() {
+        WeightedLruCache<String, String> cache = new WeightedLruCache<>(10, String::length);
+        cache.put("a", "aaaaaaaa");
+        cache.put("a", "aa");
+        cache.put("b", "bbbbbbbb");
+        assertEquals("aa", cache.get("a"));
+        assertEquals(10, cache.stats().getBytes());
+        assertEquals(0, cache.stats().getEvictions());
+    }
+
+    @Test
+    public void skipsValuesLargerThanLimit() {
+        WeightedLruCache<String, String> cache = new WeightedLruCache<>(4, String::length);
+        cache.put("a", "aaa");
+        cache.put("b", "bbbbb");
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertEquals(0, cache.stats().getEvictions());
+    }
+
+    @Test
+    public void disabledWhenLimitIsZero() {
+        WeightedLruCache<String, String> cache = new WeightedLruCache<>(0, String::length);
+        cache.put("a", "a");
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.stats().getSize());
+    }
+
+    @Test
+    public void clearKeepsCounters() {
+        WeightedLruCache<String, String> cache = new WeightedLruCache<>(10, String::length);
+        cache.put("a", "aaaa");
+        cache.get("a");
+        cache.clear();
+        assertNull(cache.get("a"));
+        CacheStats stats = cache.stats();
+        assertEquals(0, stats.getSize());
+        assertEquals(0, stats.getBytes());
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+    }
+}
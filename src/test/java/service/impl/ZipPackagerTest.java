@@ -0,0 +1,141 @@
+package service.impl;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @ClassName ZipPackagerTest
+ * @Description zip打包：按加入顺序写出，文本压缩，已压缩的格式和压缩率低的内容直接存储
+ * @Author jinym
+ **/
+public class ZipPackagerTest {
+
+    @Test
+    public void storesCompressedFormatsAndKeepsOrder() throws Exception {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("z.txt", text(20000));
+        files.put("doc/contract.docx", text(20000));
+        files.put("random.bin", random(8192));
+        files.put("a/small.txt", "short".getBytes(StandardCharsets.UTF_8));
+        files.put("empty.txt", new byte[0]);
+        ZipPackager packager = new ZipPackager(6);
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            packager.add(file.getKey(), file.getValue());
+        }
+
+        List<ZipEntry> entries = new ArrayList<>();
+        Map<String, byte[]> read = unzip(write(packager), entries);
+        assertEquals(new ArrayList<>(files.keySet()), namesOf(entries));
+        // 按扩展名判断的已压缩格式即使内容可压缩也直接存储，随机内容按采样结果直接存储
+        assertEquals(Arrays.asList(ZipEntry.DEFLATED, ZipEntry.STORED, ZipEntry.STORED, ZipEntry.DEFLATED,
+                ZipEntry.DEFLATED), methodsOf(entries));
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            assertArrayEquals(file.getKey(), file.getValue(), read.get(file.getKey()));
+        }
+    }
+
+    @Test
+    public void levelZeroStoresEverything() throws Exception {
+        ZipPackager packager = new ZipPackager(0);
+        packager.add("a.txt", text(20000)).add("b.txt", text(100));
+        List<ZipEntry> entries = new ArrayList<>();
+        unzip(write(packager), entries);
+        assertEquals(Arrays.asList("a.txt", "b.txt"), namesOf(entries));
+        assertEquals(Arrays.asList(ZipEntry.STORED, ZipEntry.STORED), methodsOf(entries));
+    }
+
+    @Test
+    public void largeEntriesSpillInOrder() throws Exception {
+        // 超过gitlab.zipSpillBytes的压缩结果写入临时文件，顺序和内容不变
+        ZipPackager packager = new ZipPackager(0);
+        List<String> names = new ArrayList<>();
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            String name = "file" + (19 - i) + ".bin";
+            byte[] data = i % 5 == 0 ? random(2 * 1024 * 1024) : random(1000 + i);
+            packager.add(name, data);
+            names.add(name);
+            files.put(name, data);
+        }
+        List<ZipEntry> entries = new ArrayList<>();
+        Map<String, byte[]> read = unzip(write(packager), entries);
+        assertEquals(names, namesOf(entries));
+        for (String name : names) {
+            assertArrayEquals(name, files.get(name), read.get(name));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidLevel() {
+        new ZipPackager(10);
+    }
+
+    private static byte[] write(ZipPackager packager) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        packager.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static Map<String, byte[]> unzip(byte[] zip, List<ZipEntry> entries) throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entry;
+            byte[] buffer = new byte[8192];
+            while ((entry = in.getNextEntry()) != null) {
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    data.write(buffer, 0, n);
+                }
+                entries.add(entry);
+                files.put(entry.getName(), data.toByteArray());
+            }
+        }
+        return files;
+    }
+
+    private static List<String> namesOf(List<ZipEntry> entries) {
+        List<String> names = new ArrayList<>();
+        for (ZipEntry entry : entries) {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+
+    private static List<Integer> methodsOf(List<ZipEntry> entries) {
+        List<Integer> methods = new ArrayList<>();
+        for (ZipEntry entry : entries) {
+            methods.add(entry.getMethod());
+        }
+        return methods;
+    }
+
+    private static byte[] text(int size) {
+        StringBuilder text = new StringBuilder(size);
+        for (int i = 0; text.length() < size; i++) {
+            text.append("contract clause ").append(i % 10).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] random(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}